@@ -0,0 +1,29 @@
+@echo off
+
+@rem ------------------------------------------------------
+@rem Compile mybots (the robots and the offline tools) into robots\
+@rem
+@rem   build_mybots.bat           Java 8 class files - the ones committed next to the sources
+@rem   build_mybots.bat --vector  also VectorKernel (JDK 16+, see robots-vector\mybots)
+@rem
+@rem Re-run it and commit robots\mybots\*.class with every source change, so Robocode loads
+@rem the same code the sources show.
+@rem ------------------------------------------------------
+
+pushd "%~dp0"
+
+del /q robots\mybots\*.class 2>nul
+javac -encoding UTF-8 --release 8 -cp "libs/robocode.jar" -d robots robots/mybots/*.java
+if errorlevel 1 goto failed
+
+if "%1"=="--vector" (
+  javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp robots -d robots robots-vector/mybots/VectorKernel.java
+  if errorlevel 1 goto failed
+)
+
+popd
+exit /b 0
+
+:failed
+popd
+exit /b 1
@@ -0,0 +1,28 @@
+#!/bin/sh
+
+#----------------------------------------------------------
+# Compile mybots (the robots and the offline tools) into robots/
+#
+#   ./build_mybots.sh           Java 8 class files - the ones committed next to the sources
+#   ./build_mybots.sh --vector  also VectorKernel (JDK 16+, see robots-vector/mybots)
+#
+# Re-run it and commit robots/mybots/*.class with every source change, so Robocode loads
+# the same code the sources show.
+#----------------------------------------------------------
+
+# Save present work directory (pwd)
+pwd=$(pwd)
+
+# Change directory to the directory where this script is located
+cd "${0%/*}" || exit
+
+rm -f robots/mybots/*.class
+javac -encoding UTF-8 --release 8 -cp "libs/robocode.jar" -d robots robots/mybots/*.java || exit 1
+
+if [ "$1" = "--vector" ]; then
+  javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp robots -d robots \
+    robots-vector/mybots/VectorKernel.java || exit 1
+fi
+
+# Restore present work directory
+cd "${pwd}" || exit
@@ -0,0 +1,101 @@
+package mybots;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorKernel
+ * SIMD DenseKernel on the Java Vector API (incubator module, JDK 16+).
+ *
+ * Each weight row is contiguous ([out][in]), so every output is a dot product: four rows are
+ * multiplied against the same input vector with fused multiply-adds, then each accumulator is
+ * reduced to one lane and bias + ReLU applied. Lanes add in a different order than the
+ * scalar loop, so results can differ from ScalarKernel in the last few bits.
+ *
+ * It lives outside robots/ so that "javac robots/mybots/*.java" and Robocode's own robot
+ * compiler never see the incubator import. Compile it separately, after the robots, with the
+ * module added (from the Robocode directory):
+ *   javac --add-modules jdk.incubator.vector -cp robots -d robots robots-vector/mybots/VectorKernel.java
+ * It is only used when the JVM running Robocode also gets --add-modules jdk.incubator.vector.
+ * Everything else only refers to it by name (DenseKernel.select), so the robots still build
+ * and run on Java 8 without it.
+ */
+public class VectorKernel implements DenseKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Whether this CPU has SIMD doubles - a 1 lane "vector" is just a slower scalar loop.
+     * DenseKernel.select asks before constructing one.
+     */
+    public static boolean isSupported() {
+        return SPECIES.length() >= 2;
+    }
+
+    public void dense(double[] p, int w, int b, double[] input, double[] output, boolean relu) {
+        int in = input.length;
+        int bound = SPECIES.loopBound(in);
+        int o = 0;
+        int row = w;
+        for (; o + 3 < output.length; o += 4, row += 4 * in) {
+            int row1 = row + in;
+            int row2 = row1 + in;
+            int row3 = row2 + in;
+            DoubleVector a0 = DoubleVector.zero(SPECIES);
+            DoubleVector a1 = DoubleVector.zero(SPECIES);
+            DoubleVector a2 = DoubleVector.zero(SPECIES);
+            DoubleVector a3 = DoubleVector.zero(SPECIES);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                DoubleVector x = DoubleVector.fromArray(SPECIES, input, i);
+                a0 = DoubleVector.fromArray(SPECIES, p, row + i).fma(x, a0);
+                a1 = DoubleVector.fromArray(SPECIES, p, row1 + i).fma(x, a1);
+                a2 = DoubleVector.fromArray(SPECIES, p, row2 + i).fma(x, a2);
+                a3 = DoubleVector.fromArray(SPECIES, p, row3 + i).fma(x, a3);
+            }
+            double s0 = a0.reduceLanes(VectorOperators.ADD);
+            double s1 = a1.reduceLanes(VectorOperators.ADD);
+            double s2 = a2.reduceLanes(VectorOperators.ADD);
+            double s3 = a3.reduceLanes(VectorOperators.ADD);
+            for (; i < in; i++) {
+                double x = input[i];
+                s0 += x * p[row + i];
+                s1 += x * p[row1 + i];
+                s2 += x * p[row2 + i];
+                s3 += x * p[row3 + i];
+            }
+            s0 += p[b + o];
+            s1 += p[b + o + 1];
+            s2 += p[b + o + 2];
+            s3 += p[b + o + 3];
+            if (relu) {
+                if (s0 < 0) s0 = 0;
+                if (s1 < 0) s1 = 0;
+                if (s2 < 0) s2 = 0;
+                if (s3 < 0) s3 = 0;
+            }
+            output[o] = s0;
+            output[o + 1] = s1;
+            output[o + 2] = s2;
+            output[o + 3] = s3;
+        }
+        for (; o < output.length; o++, row += in) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                acc = DoubleVector.fromArray(SPECIES, p, row + i).fma(DoubleVector.fromArray(SPECIES, input, i), acc);
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; i < in; i++) {
+                sum += input[i] * p[row + i];
+            }
+            sum += p[b + o];
+            output[o] = relu && sum < 0 ? 0 : sum;
+        }
+    }
+
+    public String name() {
+        return "vector" + SPECIES.length() * 64;
+    }
+}
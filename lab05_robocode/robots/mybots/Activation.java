@@ -0,0 +1,54 @@
+package mybots;
+
+/**
+ * Activation
+ * Activation functions a dense layer can use. The ordinals are stored in the binary model
+ * files, so new functions go at the end.
+ */
+public enum Activation {
+    RELU("relu"),
+    LINEAR("linear"),
+    TANH("tanh"),
+    LEAKY_RELU("leaky_relu");
+
+    /**
+     * Negative slope of LEAKY_RELU - the Keras default for activation='leaky_relu'
+     */
+    public static final double LEAKY_SLOPE = 0.2;
+
+    // Name in model files and in Keras
+    public final String label;
+
+    Activation(String label) {
+        this.label = label;
+    }
+
+    public double apply(double x) {
+        switch (this) {
+            case RELU:       return x > 0 ? x : 0;
+            case TANH:       return Math.tanh(x);
+            case LEAKY_RELU: return x > 0 ? x : x * LEAKY_SLOPE;
+            default:         return x;
+        }
+    }
+
+    /**
+     * Slope of the function at the point where it returned y - for backpropagation (MlpTrainer).
+     * All four can be written in terms of their output, so the pre-activation need not be kept.
+     */
+    public double derivative(double y) {
+        switch (this) {
+            case RELU:       return y > 0 ? 1 : 0;
+            case TANH:       return 1 - y * y;
+            case LEAKY_RELU: return y > 0 ? 1 : LEAKY_SLOPE;
+            default:         return 1;
+        }
+    }
+
+    public static Activation fromLabel(String label) {
+        for (Activation a : values()) {
+            if (a.label.equalsIgnoreCase(label.trim())) return a;
+        }
+        throw new IllegalArgumentException("Unknown activation: " + label);
+    }
+}
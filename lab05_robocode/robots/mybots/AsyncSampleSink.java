@@ -0,0 +1,141 @@
+package mybots;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AsyncSampleSink
+ * Moves encoding and disk writes off the robot thread.
+ * write() only copies the row into a preallocated SampleRing. The rows are then handed to the
+ * real sink either by a background drainer thread, or in one batch when flush() is called
+ * (e.g. from onRoundEnded) if background draining is turned off.
+ *
+ * Robocode cleans up a robot's threads at the end of each round, so call start() at the
+ * beginning of every round and stop() when it ends. Between stop() and the next start()
+ * rows skip the ring and go straight to the real sink, so end-of-round bursts are never dropped.
+ */
+public class AsyncSampleSink implements SampleSink, Runnable {
+
+    // How many rows the drainer writes before checking for new ones
+    private static final int BATCH = 256;
+
+    // How long the drainer sleeps when the ring is empty
+    private static final long IDLE_NANOS = 2000000L;
+
+    private final SampleSink inner;
+    private final SampleRing ring;
+    private final boolean background;
+    private final double[] scratch;
+
+    private Thread drainer;
+    private volatile boolean running = false;
+    private volatile boolean flushRequested = false;
+    private volatile boolean error = false;
+
+    // True between stop() and start() - only touched by the robot thread
+    private boolean passThrough = false;
+
+    /**
+     * @param background true to drain on a background thread, false to drain only in flush()/close()
+     */
+    public AsyncSampleSink(SampleSink inner, int capacity, int width, boolean background) {
+        this.inner = inner;
+        this.ring = new SampleRing(capacity, width);
+        this.background = background;
+        this.scratch = new double[width];
+    }
+
+    /**
+     * Start the drainer thread for this round (does nothing in batch mode)
+     */
+    public void start() {
+        passThrough = false;
+        if (!background || (drainer != null && drainer.isAlive())) return;
+        running = true;
+        drainer = new Thread(this, "DataCollector-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stop the drainer thread and write whatever is still queued on the calling thread
+     */
+    public void stop() {
+        running = false;
+        if (drainer != null) {
+            LockSupport.unpark(drainer);
+            try {
+                drainer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Never drain from two threads at once - if it is still alive leave the rows queued
+            if (drainer.isAlive()) return;
+            drainer = null;
+        }
+        drainAll();
+        passThrough = true;
+    }
+
+    public void run() {
+        while (running) {
+            int n = ring.drainTo(inner, scratch, BATCH);
+            if (n == 0) {
+                if (flushRequested) {
+                    flushRequested = false;
+                    inner.flush();
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+            if (inner.checkError()) error = true;
+        }
+    }
+
+    private void drainAll() {
+        while (ring.drainTo(inner, scratch, BATCH) > 0) {
+            // keep going until the ring is empty
+        }
+        inner.flush();
+        if (inner.checkError()) error = true;
+    }
+
+    /**
+     * Robot thread: copy the row into the ring. Never blocks or allocates.
+     */
+    public void write(double[] row) {
+        if (passThrough) {
+            inner.write(row);
+        } else {
+            ring.offer(row);
+        }
+    }
+
+    public void flush() {
+        if (running) {
+            // The drainer owns the consumer side - ask it to flush once it catches up
+            flushRequested = true;
+        } else {
+            drainAll();
+        }
+    }
+
+    public void close() {
+        stop();
+        inner.close();
+        if (inner.checkError()) error = true;
+    }
+
+    public boolean checkError() {
+        return error;
+    }
+
+    /**
+     * Rows thrown away because the ring was full when the robot tried to log them
+     */
+    public long dropped() {
+        return ring.dropped();
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+}
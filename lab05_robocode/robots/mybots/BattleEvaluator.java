@@ -0,0 +1,510 @@
+package mybots;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import robocode.BattleResults;
+import robocode.control.BattleSpecification;
+import robocode.control.BattlefieldSpecification;
+import robocode.control.RobocodeEngine;
+import robocode.control.RobotSpecification;
+import robocode.control.events.BattleAdaptor;
+import robocode.control.events.BattleCompletedEvent;
+import robocode.control.events.BattleErrorEvent;
+
+/**
+ * BattleEvaluator
+ * Ranks candidate weight files by how NeuralNetBot actually does in battle, not by validation
+ * loss: every candidate fights a 1-on-1 battle against each opponent (sample bots by default),
+ * headless, through robocode.control.RobocodeEngine.
+ *
+ * RobocodeEngine is one per JVM, so battles run in a pool of worker JVMs (one per core by
+ * default). Each worker has its own Robocode home under the work directory - the opponents'
+ * packages, the compiled mybots classes and its own NeuralNetBot.data - so workers never read
+ * each other's model files. Before a battle the candidate is copied into the worker's
+ * NeuralNetBot.data under the name NeuralNetBot looks for (neural_weights.txt / .bin / .q8 /
+ * .set plus its parts); ModelCache notices the new file by its CRC32. Workers start once and
+ * take battles from a shared queue until it is empty, so the engine start-up is paid once per
+ * core, not once per battle.
+ *
+ * The workers' NeuralNetBot.data also gets a bot.properties with latency.guard=false: a worker
+ * shares its core with the engine and the opponent, so the guard would hand rounds to the
+ * circle-strafe teacher and score the teacher instead of the candidate. EvolutionTrainer's
+ * rollouts run through the same pool and are covered too.
+ *
+ * Candidates are ranked by their share of the total score (ours / (ours + opponent's),
+ * averaged over opponents), then by survival score.
+ * Writes battle_leaderboard.csv (best first) into the output directory.
+ *
+ * Usage: java -cp "libs/*;robots" mybots.BattleEvaluator <weight file> [<weight file> ...]
+ *            [--opponents sample.Crazy,sample.SpinBot,sample.Walls,sample.RamFire,sample.Tracker]
+ *            [--rounds 10] [--workers N] [--home .] [--work-dir dir] [--out dir]
+ *        run from the Robocode directory (or pass --home); mybots must be compiled
+ */
+public class BattleEvaluator {
+
+    public static final String LEADERBOARD_FILE = "battle_leaderboard.csv";
+    public static final String DEFAULT_OPPONENTS = "sample.Crazy,sample.SpinBot,sample.Walls,sample.RamFire,sample.Tracker";
+    public static final int BATTLEFIELD_WIDTH = 800;
+    public static final int BATTLEFIELD_HEIGHT = 600;
+
+    // The name Robocode gives a robot loaded from a class directory
+    private static final String BOT = NeuralNetBot.class.getName() + "*";
+
+    // Every file NeuralNetBot could load a model or policy from
+    private static final String[] MODEL_FILES = {
+        ModelSet.FILE, QuantizedModel.FILE, NeuralModel.BINARY_FILE, NeuralModel.TEXT_FILE, PolicyGrid.FILE
+    };
+
+    /**
+     * One candidate's results, per opponent
+     */
+    static final class Candidate {
+        final File file;
+        final double[] score;           // ours
+        final double[] opponentScore;
+        final double[] survival;
+        final double[] bulletDamage;
+        final int[] firsts;
+        final String[] error;
+
+        Candidate(File file, int opponents) {
+            this.file = file;
+            score = new double[opponents];
+            opponentScore = new double[opponents];
+            survival = new double[opponents];
+            bulletDamage = new double[opponents];
+            firsts = new int[opponents];
+            error = new String[opponents];
+        }
+
+        /**
+         * Mean over opponents of our share of the battle's total score; a failed battle counts as 0
+         */
+        double scoreShare() {
+            double sum = 0;
+            for (int o = 0; o < score.length; o++) sum += share(o);
+            return sum / score.length;
+        }
+
+        double share(int o) {
+            double total = score[o] + opponentScore[o];
+            return error[o] != null || total == 0 ? 0 : score[o] / total;
+        }
+
+        double total(double[] values) {
+            double sum = 0;
+            for (double v : values) sum += v;
+            return sum;
+        }
+
+        int wins() {
+            int sum = 0;
+            for (int f : firsts) sum += f;
+            return sum;
+        }
+    }
+
+    /**
+     * A worker JVM with its own Robocode home. Used by one thread at a time.
+     */
+    static final class Worker {
+        final File home;
+        final File dataDir;
+        final Process process;
+        final PrintWriter commands;
+        final BufferedReader replies;
+
+        Worker(File home, File libs, File classes) throws IOException {
+            this.home = home;
+            this.dataDir = new File(home, "robots/mybots/" + NeuralNetBot.class.getSimpleName() + ".data");
+            String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+            // Absolute: the worker runs in its own home
+            String classpath = new File(libs.getAbsoluteFile(), "*").getPath() + File.pathSeparator + classes.getAbsolutePath();
+            ProcessBuilder pb = new ProcessBuilder(java, "-Xmx512M", "-Djava.awt.headless=true",
+                    "-XX:+IgnoreUnrecognizedVMOptions",
+                    "--add-opens=java.base/sun.net.www.protocol.jar=ALL-UNNAMED",
+                    "--add-opens=java.base/java.lang.reflect=ALL-UNNAMED",
+                    "-cp", classpath, BattleEvaluator.class.getName(), "--worker", home.getAbsolutePath());
+            pb.directory(home);
+            pb.redirectError(new File(home, "worker.log"));
+            process = pb.start();
+            commands = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8), true);
+            replies = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Fight one battle with this candidate installed
+         * @return {our score, opponent score, our survival, our firsts, our bullet damage}
+         */
+        double[] battle(File candidate, String opponent, int rounds) throws IOException {
+            installModel(candidate, dataDir);
+            commands.println("battle " + opponent + " " + rounds);
+            double[] result = null;
+            String line;
+            while ((line = replies.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    String[] f = line.substring(7).split(" ");
+                    result = new double[f.length];
+                    for (int i = 0; i < f.length; i++) result[i] = Double.parseDouble(f[i]);
+                } else if (line.startsWith("ERROR ")) {
+                    throw new IOException(line.substring(6));
+                } else if (line.equals("DONE")) {
+                    if (result == null) throw new IOException("Worker returned no result");
+                    return result;
+                }
+                // anything else is the engine talking
+            }
+            throw new IOException("Worker exited, see " + new File(home, "worker.log"));
+        }
+
+        boolean alive() {
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        void close() {
+            commands.close();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Worker JVMs that stay up between run() calls, so a training loop pays the engine start-up once
+     */
+    static final class Pool {
+        final String[] opponents;
+        private final Worker[] workers;
+
+        Pool(File home, File workDir, String[] opponents, int size) throws IOException {
+            File libs = new File(home, "libs");
+            File robots = new File(home, "robots");
+            if (!new File(libs, "robocode.jar").isFile()) {
+                throw new IOException(home.getAbsolutePath() + " is not a Robocode directory (no libs/robocode.jar) - use --home");
+            }
+            File classes = classesRoot();
+            if (!new File(classes, "mybots/" + NeuralNetBot.class.getSimpleName() + ".class").isFile()) {
+                throw new IOException("Compiled mybots classes not found in " + classes);
+            }
+            this.opponents = opponents.clone();
+            workers = new Worker[Math.max(1, size)];
+            for (int w = 0; w < workers.length; w++) {
+                File workerHome = new File(workDir, "worker-" + w);
+                prepareHome(workerHome, robots, classes, opponents);
+                workers[w] = new Worker(workerHome, libs, classes);
+            }
+        }
+
+        int size() {
+            return workers.length;
+        }
+
+        /**
+         * Fight every candidate against every opponent, filling in the candidates' results
+         */
+        void run(final List<Candidate> candidates, final int rounds, final boolean log) throws InterruptedException {
+            // Battles, grouped by candidate so a worker swaps models as rarely as possible
+            final ConcurrentLinkedQueue<int[]> battles = new ConcurrentLinkedQueue<int[]>();
+            for (int c = 0; c < candidates.size(); c++) {
+                for (int o = 0; o < opponents.length; o++) battles.add(new int[] {c, o});
+            }
+            final int totalBattles = battles.size();
+            final int[] done = new int[1];
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int w = 0; w < workers.length; w++) {
+                final Worker worker = workers[w];
+                if (!worker.alive()) continue;
+                Thread t = new Thread(new Runnable() {
+                    public void run() {
+                        int[] task;
+                        while ((task = battles.poll()) != null) {
+                            Candidate c = candidates.get(task[0]);
+                            int o = task[1];
+                            try {
+                                double[] r = worker.battle(c.file, opponents[o], rounds);
+                                c.score[o] = r[0];
+                                c.opponentScore[o] = r[1];
+                                c.survival[o] = r[2];
+                                c.firsts[o] = (int) r[3];
+                                c.bulletDamage[o] = r[4];
+                                c.error[o] = null;
+                            } catch (IOException e) {
+                                c.error[o] = e.getMessage();
+                            }
+                            synchronized (done) {
+                                done[0]++;
+                                if (log || c.error[o] != null) {
+                                    System.out.println(String.format(Locale.ROOT, "[%d/%d] %s vs %s: %s", done[0], totalBattles,
+                                            c.file.getName(), opponents[o], c.error[o] != null ? "FAILED - " + c.error[o]
+                                                    : String.format(Locale.ROOT, "score %.0f to %.0f, %d/%d rounds won",
+                                                            c.score[o], c.opponentScore[o], c.firsts[o], rounds)));
+                                }
+                            }
+                            // A dead worker leaves the rest of the queue to the others
+                            if (!worker.alive()) break;
+                        }
+                    }
+                }, "battle-worker-" + w);
+                threads.add(t);
+                t.start();
+            }
+            for (Thread t : threads) t.join();
+            int[] left;
+            while ((left = battles.poll()) != null) {
+                candidates.get(left[0]).error[left[1]] = "No worker left to run it";
+            }
+        }
+
+        void close() {
+            for (Worker w : workers) w.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 2 && args[0].equals("--worker")) {
+            runWorker(new File(args[1]));
+            return;
+        }
+        List<File> files = new ArrayList<File>();
+        String opponentList = DEFAULT_OPPONENTS;
+        int rounds = 10;
+        int workers = Runtime.getRuntime().availableProcessors();
+        File home = new File(".");
+        File workDir = new File(System.getProperty("java.io.tmpdir"), "battle_eval");
+        File outDir = new File(".");
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                files.add(new File(args[i]));
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+            String value = args[++i];
+            if (args[i - 1].equals("--opponents")) opponentList = value;
+            else if (args[i - 1].equals("--rounds")) rounds = Integer.parseInt(value);
+            else if (args[i - 1].equals("--workers")) workers = Integer.parseInt(value);
+            else if (args[i - 1].equals("--home")) home = new File(value);
+            else if (args[i - 1].equals("--work-dir")) workDir = new File(value);
+            else if (args[i - 1].equals("--out")) outDir = new File(value);
+            else throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: java mybots.BattleEvaluator <weight file> [<weight file> ...] [--opponents "
+                    + DEFAULT_OPPONENTS + "] [--rounds 10] [--workers N] [--home .] [--work-dir dir] [--out dir]");
+            return;
+        }
+        for (File f : files) {
+            if (!f.isFile()) throw new IOException("No such weight file: " + f);
+        }
+        final String[] opponents = opponentList.split(",");
+        for (int o = 0; o < opponents.length; o++) opponents[o] = opponents[o].trim();
+
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (File f : files) candidates.add(new Candidate(f, opponents.length));
+        int battles = candidates.size() * opponents.length;
+        Pool pool = new Pool(home, workDir, opponents, Math.min(workers, battles));
+        System.out.println(candidates.size() + " candidates x " + opponents.length + " opponents, " + rounds
+                + " rounds each, on " + pool.size() + " workers");
+        try {
+            pool.run(candidates, rounds, true);
+        } finally {
+            pool.close();
+        }
+
+        List<Candidate> ranked = new ArrayList<Candidate>(candidates);
+        Collections.sort(ranked, new Comparator<Candidate>() {
+            public int compare(Candidate a, Candidate b) {
+                int c = Double.compare(b.scoreShare(), a.scoreShare());
+                return c != 0 ? c : Double.compare(b.total(b.survival), a.total(a.survival));
+            }
+        });
+        File leaderboard = new File(outDir, LEADERBOARD_FILE);
+        writeLeaderboard(ranked, opponents, rounds, leaderboard);
+        System.out.println();
+        for (int r = 0; r < ranked.size(); r++) {
+            Candidate c = ranked.get(r);
+            System.out.println(String.format(Locale.ROOT, "%d. %-30s score share %.3f, %d/%d rounds won, survival %.0f",
+                    r + 1, c.file.getPath(), c.scoreShare(), c.wins(), rounds * opponents.length, c.total(c.survival)));
+        }
+        System.out.println("Wrote " + leaderboard);
+    }
+
+    private static void writeLeaderboard(List<Candidate> ranked, String[] opponents, int rounds, File file) throws IOException {
+        PrintWriter pw = new PrintWriter(file, "UTF-8");
+        try {
+            StringBuilder header = new StringBuilder("rank,candidate,score_share,win_rate,score,survival,bullet_damage");
+            for (String o : opponents) header.append(",share_vs_").append(o);
+            pw.println(header);
+            for (int r = 0; r < ranked.size(); r++) {
+                Candidate c = ranked.get(r);
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format(Locale.ROOT, "%d,\"%s\",%.4f,%.4f,%.0f,%.0f,%.0f", r + 1, c.file.getPath(),
+                        c.scoreShare(), c.wins() / (double) (rounds * opponents.length), c.total(c.score),
+                        c.total(c.survival), c.total(c.bulletDamage)));
+                for (int o = 0; o < opponents.length; o++) {
+                    sb.append(',').append(c.error[o] != null ? "" : String.format(Locale.ROOT, "%.4f", c.share(o)));
+                }
+                pw.println(sb);
+            }
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) throw new IOException("Could not write " + file);
+    }
+
+    /**
+     * Where the compiled mybots classes are: the class directory this tool was loaded from
+     */
+    private static File classesRoot() throws IOException {
+        try {
+            return new File(BattleEvaluator.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * A minimal Robocode home: the opponents' packages, the compiled mybots classes with their
+     * .properties, and a NeuralNetBot.data holding only bot.properties (latency guard off).
+     * Robocode writes its config and robot database next to them on start-up.
+     */
+    private static void prepareHome(File home, File robots, File classes, String[] opponents) throws IOException {
+        File mybots = new File(home, "robots/mybots");
+        deleteTree(new File(home, "robots"));
+        copyFiles(new File(classes, "mybots"), mybots, ".class");
+        copyFiles(new File(robots, "mybots"), mybots, ".properties");
+        File dataDir = new File(mybots, NeuralNetBot.class.getSimpleName() + ".data");
+        dataDir.mkdirs();
+        Files.write(new File(dataDir, NeuralNetBot.CONFIG_FILE).toPath(),
+                "# Written by BattleEvaluator - score the network, never the teacher\nlatency.guard=false\n".getBytes(StandardCharsets.UTF_8));
+        for (String opponent : opponents) {
+            int dot = opponent.lastIndexOf('.');
+            String pkg = dot < 0 ? "" : opponent.substring(0, dot).replace('.', '/');
+            File src = new File(robots, pkg);
+            if (!new File(src, opponent.substring(dot + 1) + ".class").isFile()) {
+                throw new IOException("Opponent " + opponent + " is not compiled in " + robots);
+            }
+            copyFiles(src, new File(new File(home, "robots"), pkg), null);
+        }
+    }
+
+    /**
+     * Copy the plain files of a directory (not its subdirectories), optionally only one extension
+     */
+    private static void copyFiles(File from, File to, String extension) throws IOException {
+        to.mkdirs();
+        File[] files = from.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (f.isFile() && (extension == null || f.getName().endsWith(extension))) {
+                Files.copy(f.toPath(), new File(to, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void deleteTree(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteTree(c);
+        }
+        f.delete();
+    }
+
+    /**
+     * Put a candidate into a NeuralNetBot.data directory as the only model there
+     */
+    static void installModel(File candidate, File dataDir) throws IOException {
+        for (String name : MODEL_FILES) new File(dataDir, name).delete();
+        byte[] bytes = ModelCache.readAll(candidate);
+        if (candidate.getName().endsWith(".set")) {
+            // The manifest plus its parts, at the same relative paths
+            File base = candidate.getAbsoluteFile().getParentFile();
+            for (File part : ModelSet.parts(candidate, bytes)) {
+                String relative = base.toPath().relativize(part.getAbsoluteFile().toPath()).toString();
+                if (relative.startsWith("..")) throw new IOException(part + " is outside the directory of " + candidate);
+                File target = new File(dataDir, relative);
+                target.getParentFile().mkdirs();
+                Files.copy(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.write(new File(dataDir, ModelSet.FILE).toPath(), bytes);
+            return;
+        }
+        int magic = bytes.length >= 4
+                ? (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8 | (bytes[2] & 0xff) << 16 | (bytes[3] & 0xff) << 24 : 0;
+        String name = magic == QuantizedModel.MAGIC ? QuantizedModel.FILE
+                : magic == NeuralModel.MAGIC ? NeuralModel.BINARY_FILE : NeuralModel.TEXT_FILE;
+        Files.write(new File(dataDir, name).toPath(), bytes);
+    }
+
+    /**
+     * Worker side: one RobocodeEngine, battles read from stdin ("battle <opponent> <rounds>"),
+     * "RESULT ..." and "DONE" (or "ERROR ...") written to stdout. Exits at end of input.
+     */
+    private static void runWorker(File home) throws IOException {
+        RobocodeEngine.setLogMessagesEnabled(false);
+        RobocodeEngine engine = new RobocodeEngine(home);
+        engine.setVisible(false);
+        final BattleResults[][] results = new BattleResults[1][];
+        final String[] error = new String[1];
+        engine.addBattleListener(new BattleAdaptor() {
+            public void onBattleCompleted(BattleCompletedEvent e) {
+                results[0] = e.getIndexedResults();
+            }
+
+            public void onBattleError(BattleErrorEvent e) {
+                error[0] = e.getError();
+            }
+        });
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            System.out.println(runBattle(engine, line, results, error));
+            System.out.flush();
+        }
+        engine.close();
+        // The engine leaves non-daemon threads behind
+        System.exit(0);
+    }
+
+    private static String runBattle(RobocodeEngine engine, String command, BattleResults[][] results, String[] error) {
+        String[] cmd = command.trim().split(" ");
+        if (cmd.length != 3 || !cmd[0].equals("battle")) return "ERROR Unknown command: " + command;
+        RobotSpecification[] robots = engine.getLocalRepository(BOT + "," + cmd[1]);
+        if (robots.length != 2) {
+            return "ERROR Robots not found: " + BOT + "," + cmd[1] + " (got " + Arrays.toString(robots) + ")";
+        }
+        results[0] = null;
+        error[0] = null;
+        BattlefieldSpecification field = new BattlefieldSpecification(BATTLEFIELD_WIDTH, BATTLEFIELD_HEIGHT);
+        engine.runBattle(new BattleSpecification(Integer.parseInt(cmd[2]), field, robots), true);
+        if (results[0] == null) return "ERROR " + (error[0] != null ? error[0] : "Battle did not complete");
+        BattleResults us = results[0][0];
+        BattleResults them = results[0][1];
+        return "RESULT " + us.getScore() + " " + them.getScore() + " " + us.getSurvival() + " "
+                + us.getFirsts() + " " + us.getBulletDamage() + "\nDONE";
+    }
+}
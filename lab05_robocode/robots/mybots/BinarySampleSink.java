@@ -0,0 +1,129 @@
+package mybots;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinarySampleSink
+ * Writes rows as fixed-width little-endian records, so logging a row is just a few
+ * array stores into a buffer instead of formatting ten doubles as text.
+ *
+ * File layout (all little-endian):
+ *   0  int    magic "RCDS"
+ *   4  short  format version
+ *   6  byte   bytes per value (4 = float, 8 = double)
+ *   7  byte   reserved (0)
+ *   8  int    column count
+ *   12 int    offset of the first record
+ *   16        column names, each as (short length, UTF-8 bytes)
+ *   ...       records, columnCount values each, until end of file
+ */
+public class BinarySampleSink implements SampleSink {
+
+    public static final int MAGIC = 0x53444352; // "RCDS" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int HEADER_FIXED_BYTES = 16;
+
+    private final OutputStream out;
+    private final ByteBuffer buf;
+    private final int columns;
+    private final boolean useFloat;
+    private final int recordBytes;
+    private boolean error = false;
+
+    /**
+     * @param useFloat true to store 4-byte floats (half the size), false for full doubles
+     */
+    public BinarySampleSink(OutputStream out, String[] columns, boolean useFloat) {
+        this.out = out;
+        this.columns = columns.length;
+        this.useFloat = useFloat;
+        this.recordBytes = this.columns * (useFloat ? 4 : 8);
+
+        // Buffer at least a few hundred rows between disk writes
+        int capacity = Math.max(8192, recordBytes * 256);
+        buf = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+        writeHeader(columns);
+    }
+
+    private void writeHeader(String[] names) {
+        byte[][] encoded = new byte[names.length][];
+        int headerBytes = HEADER_FIXED_BYTES;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            headerBytes += 2 + encoded[i].length;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.put((byte) (useFloat ? 4 : 8));
+        header.put((byte) 0);
+        header.putInt(names.length);
+        header.putInt(headerBytes);
+        for (byte[] name : encoded) {
+            header.putShort((short) name.length);
+            header.put(name);
+        }
+
+        try {
+            out.write(header.array(), 0, header.position());
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    public void write(double[] row) {
+        if (buf.remaining() < recordBytes) {
+            drain();
+        }
+        if (useFloat) {
+            for (int i = 0; i < columns; i++) {
+                buf.putFloat((float) row[i]);
+            }
+        } else {
+            for (int i = 0; i < columns; i++) {
+                buf.putDouble(row[i]);
+            }
+        }
+    }
+
+    /**
+     * Write the buffered records to the stream without flushing the stream itself
+     */
+    private void drain() {
+        if (buf.position() == 0) return;
+        try {
+            out.write(buf.array(), 0, buf.position());
+        } catch (IOException e) {
+            error = true;
+        }
+        buf.clear();
+    }
+
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    public void close() {
+        flush();
+        try {
+            out.close();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    public boolean checkError() {
+        return error;
+    }
+}
@@ -0,0 +1,181 @@
+package mybots;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * BranchedBenchmark
+ * Offline micro-benchmark for BranchedEngine, on random weights:
+ *   ensemble    N members of one shape, as N separate InferenceEngine passes averaged by hand
+ *               against one BranchedEngine pass (first layers stacked into one product)
+ *   multi-head  a shared trunk with 3 heads against 3 separate networks that each repeat the
+ *               trunk's layers (what it costs to train one network per output)
+ * Both sides are checked to agree before anything is timed.
+ *
+ * Usage: java -cp robots mybots.BranchedBenchmark [members] [member shape, e.g. 7,20,20,3]
+ */
+public class BranchedBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURE_ROUNDS = 30;
+    private static final int CALLS_PER_ROUND = 100000;
+
+    // Consumed result, so the JIT cannot drop the work
+    private static double sink;
+
+    public static void main(String[] args) {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int[] shape = parseShape(args.length > 1 ? args[1] : "7,20,20,3");
+        Random rnd = new Random(42);
+        final double[][] inputs = new double[1024][shape[0]];
+        for (double[] in : inputs) {
+            for (int i = 0; i < in.length; i++) in[i] = rnd.nextGaussian();
+        }
+
+        // --- Ensemble ---
+        final InferenceEngine[] separate = new InferenceEngine[members];
+        int[][] sizes = new int[members][];
+        Activation[][] acts = new Activation[members][];
+        double[][] params = new double[members][];
+        for (int m = 0; m < members; m++) {
+            sizes[m] = shape;
+            acts[m] = hiddenRelu(shape.length - 1);
+            params[m] = randomParams(shape, rnd);
+            separate[m] = new InferenceEngine(shape, acts[m], params[m]);
+        }
+        final BranchedEngine ensemble = new BranchedEngine(null, sizes, acts, params, BranchedEngine.Combine.MEAN);
+        final double[] mean = new double[ensemble.outputSize()];
+        System.out.println("Ensemble of " + members + " x " + NeuralModel.describe(shape, acts[0]));
+        double diff = 0;
+        for (double[] in : inputs) {
+            averaged(separate, in, mean);
+            System.arraycopy(in, 0, ensemble.input(), 0, in.length);
+            double[] y = ensemble.forward();
+            for (int o = 0; o < y.length; o++) diff = Math.max(diff, Math.abs(y[o] - mean[o]));
+        }
+        System.out.println("max |separate - branched| = " + diff);
+        report("separate passes", new Runnable() {
+            public void run() {
+                double acc = 0;
+                for (int n = 0; n < CALLS_PER_ROUND; n++) {
+                    acc += averaged(separate, inputs[n & 1023], mean)[0];
+                }
+                sink += acc;
+            }
+        });
+        report("BranchedEngine", branched(ensemble, inputs));
+
+        // --- Multi-head: trunk in-32-32, heads 32-16-1 ---
+        int[] trunkShape = {shape[0], 32, 32};
+        int[] headShape = {32, 16, 1};
+        int[] fullShape = {shape[0], 32, 32, 16, 1};
+        double[] trunkParams = randomParams(trunkShape, rnd);
+        Activation[] trunkActs = {Activation.RELU, Activation.RELU};
+        InferenceEngine trunk = new InferenceEngine(trunkShape, trunkActs, trunkParams);
+        int heads = 3;
+        final InferenceEngine[] full = new InferenceEngine[heads];
+        int[][] headSizes = new int[heads][];
+        Activation[][] headActs = new Activation[heads][];
+        double[][] headParams = new double[heads][];
+        for (int h = 0; h < heads; h++) {
+            headSizes[h] = headShape;
+            headActs[h] = hiddenRelu(2);
+            headParams[h] = randomParams(headShape, rnd);
+            // The same function as trunk + head, as one network
+            double[] p = Arrays.copyOf(trunkParams, trunkParams.length + headParams[h].length);
+            System.arraycopy(headParams[h], 0, p, trunkParams.length, headParams[h].length);
+            full[h] = new InferenceEngine(fullShape, hiddenRelu(4), p);
+        }
+        final BranchedEngine multi = new BranchedEngine(trunk, headSizes, headActs, headParams, BranchedEngine.Combine.CONCAT);
+        final double[] concat = new double[heads];
+        System.out.println();
+        System.out.println("Trunk " + NeuralModel.describe(trunkShape, trunkActs)
+                + " + " + heads + " heads " + NeuralModel.describe(headShape, headActs[0]));
+        diff = 0;
+        for (double[] in : inputs) {
+            concatenated(full, in, concat);
+            System.arraycopy(in, 0, multi.input(), 0, in.length);
+            double[] y = multi.forward();
+            for (int o = 0; o < y.length; o++) diff = Math.max(diff, Math.abs(y[o] - concat[o]));
+        }
+        System.out.println("max |separate - branched| = " + diff);
+        report("separate networks", new Runnable() {
+            public void run() {
+                double acc = 0;
+                for (int n = 0; n < CALLS_PER_ROUND; n++) {
+                    acc += concatenated(full, inputs[n & 1023], concat)[0];
+                }
+                sink += acc;
+            }
+        });
+        report("BranchedEngine", branched(multi, inputs));
+        if (sink == 42) System.out.println();
+    }
+
+    private static Runnable branched(final BranchedEngine engine, final double[][] inputs) {
+        return new Runnable() {
+            public void run() {
+                double acc = 0;
+                double[] x = engine.input();
+                for (int n = 0; n < CALLS_PER_ROUND; n++) {
+                    System.arraycopy(inputs[n & 1023], 0, x, 0, x.length);
+                    acc += engine.forward()[0];
+                }
+                sink += acc;
+            }
+        };
+    }
+
+    private static double[] averaged(InferenceEngine[] members, double[] in, double[] out) {
+        Arrays.fill(out, 0);
+        for (InferenceEngine m : members) {
+            double[] y = m.forward(in);
+            for (int o = 0; o < out.length; o++) out[o] += y[o];
+        }
+        for (int o = 0; o < out.length; o++) out[o] *= 1.0 / members.length;
+        return out;
+    }
+
+    private static double[] concatenated(InferenceEngine[] networks, double[] in, double[] out) {
+        for (int h = 0; h < networks.length; h++) {
+            out[h] = networks[h].forward(in)[0];
+        }
+        return out;
+    }
+
+    private static void report(String name, Runnable body) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) body.run();
+        double[] ns = new double[MEASURE_ROUNDS];
+        for (int r = 0; r < MEASURE_ROUNDS; r++) {
+            long t0 = System.nanoTime();
+            body.run();
+            ns[r] = (System.nanoTime() - t0) / (double) CALLS_PER_ROUND;
+        }
+        Arrays.sort(ns);
+        System.out.println(String.format(Locale.ROOT, "%-20s best %7.1f ns/op   median %7.1f ns/op",
+                name, ns[0], ns[MEASURE_ROUNDS / 2]));
+    }
+
+    private static int[] parseShape(String shape) {
+        String[] parts = shape.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) sizes[i] = Integer.parseInt(parts[i].trim());
+        return sizes;
+    }
+
+    /**
+     * ReLU everywhere but a linear last layer
+     */
+    private static Activation[] hiddenRelu(int layers) {
+        Activation[] acts = new Activation[layers];
+        for (int l = 0; l < layers; l++) acts[l] = l == layers - 1 ? Activation.LINEAR : Activation.RELU;
+        return acts;
+    }
+
+    private static double[] randomParams(int[] sizes, Random rnd) {
+        double[] params = new double[InferenceEngine.packedSize(sizes)];
+        for (int i = 0; i < params.length; i++) params[i] = rnd.nextGaussian() * 0.3;
+        return params;
+    }
+}
@@ -0,0 +1,202 @@
+package mybots;
+
+import java.util.Arrays;
+
+/**
+ * BranchedEngine
+ * Several networks that read the same vector, evaluated as one forward pass:
+ *   multi-head  a shared trunk (hidden layers) runs once, then every head reads its output;
+ *               the heads' outputs are concatenated (CONCAT)
+ *   ensemble    no trunk, every member reads the input; the outputs are averaged (MEAN)
+ *
+ * Because all branches read the same vector, their first layers are stacked into one
+ * [sum of widths][in] weight block and computed with a single DenseKernel pass - one matrix
+ * product instead of one per branch. The remaining layers are block-diagonal (each branch only
+ * sees its own activations); they are packed branch after branch behind the stacked block, so
+ * the whole pass still walks one contiguous parameter array front to back.
+ *
+ * Only the first layer is batched. From the second layer on every branch multiplies its own
+ * weights by its own activations, so there is no shared operand to stack, even when ensemble
+ * members have the same shape: those layers cost one DenseKernel call per branch per layer,
+ * the same as running the members one after another. The saving is therefore largest for
+ * wide first layers and shallow branches (e.g. MlpTrainer --heads: single-layer heads).
+ *
+ * Like InferenceEngine: preallocated buffers, no allocation per forward(), not thread safe.
+ */
+public class BranchedEngine implements ForwardPass {
+
+    public enum Combine { CONCAT, MEAN }
+
+    private final InferenceEngine trunk;       // null when the branches read the input directly
+    private final Combine combine;
+    private final DenseKernel kernel;
+    private final double[] input;              // the trunk's input buffer, or our own
+    private final double[] params;             // stacked first layers, then each branch's other layers
+
+    // First layer of every branch, stacked
+    private final int firstBiasOffset;
+    private final boolean firstRelu;           // every branch starts with ReLU - fused into the pass
+    private final double[] first;              // all first-layer outputs, branch after branch
+    private final int[] firstStart;            // where branch b's rows start in first
+
+    // Remaining layers, per branch
+    private final Activation[][] activations;
+    private final int[][] weightOffset;
+    private final int[][] biasOffset;
+    private final double[][][] buffers;        // buffers[b][l] = output of branch b's layer l
+
+    private final double[] output;
+    private final int[] outputStart;           // CONCAT: where branch b's outputs go
+
+    /**
+     * @param trunk    shared hidden layers, or null
+     * @param branches heads (CONCAT) or ensemble members (MEAN), in the order their outputs appear
+     */
+    public BranchedEngine(InferenceEngine trunk, int[][] sizes, Activation[][] activations, double[][] params,
+                          Combine combine) {
+        this(trunk, sizes, activations, params, combine, InferenceEngine.defaultKernel());
+    }
+
+    public BranchedEngine(InferenceEngine trunk, int[][] sizes, Activation[][] activations, double[][] params,
+                          Combine combine, DenseKernel kernel) {
+        int n = sizes.length;
+        if (n == 0 || activations.length != n || params.length != n) {
+            throw new IllegalArgumentException("Need sizes, activations and params for at least one branch");
+        }
+        int in = trunk != null ? trunk.outputSize() : sizes[0][0];
+        int outputs = 0;
+        int rows = 0;
+        int total = 0;
+        boolean allRelu = true;
+        for (int b = 0; b < n; b++) {
+            // Checks the packing and the activation count
+            new InferenceEngine(sizes[b], activations[b], params[b], kernel);
+            if (sizes[b][0] != in) {
+                throw new IllegalArgumentException("Branch " + b + " reads " + sizes[b][0] + " values, expected " + in);
+            }
+            int out = sizes[b][sizes[b].length - 1];
+            if (combine == Combine.MEAN && out != sizes[0][sizes[0].length - 1]) {
+                throw new IllegalArgumentException("Ensemble members must have the same number of outputs");
+            }
+            outputs = combine == Combine.MEAN ? out : outputs + out;
+            rows += sizes[b][1];
+            total += params[b].length;
+            allRelu &= activations[b][0] == Activation.RELU;
+        }
+        this.trunk = trunk;
+        this.combine = combine;
+        this.kernel = kernel;
+        this.input = trunk != null ? trunk.input() : new double[in];
+        this.firstRelu = allRelu;
+        this.activations = new Activation[n][];
+
+        // Stacked first layers: all weight rows, then all biases
+        this.params = new double[total];
+        firstStart = new int[n];
+        firstBiasOffset = rows * in;
+        int row = 0;
+        for (int b = 0; b < n; b++) {
+            int width = sizes[b][1];
+            firstStart[b] = row;
+            System.arraycopy(params[b], 0, this.params, row * in, width * in);
+            System.arraycopy(params[b], width * in, this.params, firstBiasOffset + row, width);
+            row += width;
+        }
+        first = new double[rows];
+
+        // Then every branch's remaining layers, in the InferenceEngine layout
+        int pos = firstBiasOffset + rows;
+        weightOffset = new int[n][];
+        biasOffset = new int[n][];
+        buffers = new double[n][][];
+        outputStart = new int[n];
+        int outPos = 0;
+        for (int b = 0; b < n; b++) {
+            int layers = sizes[b].length - 1;
+            this.activations[b] = activations[b].clone();
+            weightOffset[b] = new int[layers];
+            biasOffset[b] = new int[layers];
+            buffers[b] = new double[layers][];
+            int skip = sizes[b][0] * sizes[b][1] + sizes[b][1];
+            System.arraycopy(params[b], skip, this.params, pos, params[b].length - skip);
+            for (int l = 1; l < layers; l++) {
+                weightOffset[b][l] = pos;
+                pos += sizes[b][l] * sizes[b][l + 1];
+                biasOffset[b][l] = pos;
+                pos += sizes[b][l + 1];
+            }
+            for (int l = 0; l < layers; l++) {
+                buffers[b][l] = new double[sizes[b][l + 1]];
+            }
+            outputStart[b] = outPos;
+            if (combine == Combine.CONCAT) outPos += sizes[b][layers];
+        }
+        output = new double[outputs];
+    }
+
+    public double[] input() {
+        return input;
+    }
+
+    public double[] forward() {
+        double[] x = trunk != null ? trunk.forward() : input;
+
+        // Every branch's first layer in one pass over the stacked block
+        kernel.dense(params, 0, firstBiasOffset, x, first, firstRelu);
+
+        if (combine == Combine.MEAN) Arrays.fill(output, 0);
+        for (int b = 0; b < buffers.length; b++) {
+            double[][] buf = buffers[b];
+            Activation[] acts = activations[b];
+            double[] h = buf[0];
+            System.arraycopy(first, firstStart[b], h, 0, h.length);
+            if (!firstRelu) activate(acts[0], h);
+
+            // Not batched: each branch's own weights times its own activations
+            for (int l = 1; l < buf.length; l++) {
+                boolean relu = acts[l] == Activation.RELU;
+                kernel.dense(params, weightOffset[b][l], biasOffset[b][l], buf[l - 1], buf[l], relu);
+                if (!relu) activate(acts[l], buf[l]);
+            }
+
+            double[] y = buf[buf.length - 1];
+            if (combine == Combine.CONCAT) {
+                System.arraycopy(y, 0, output, outputStart[b], y.length);
+            } else {
+                for (int o = 0; o < output.length; o++) output[o] += y[o];
+            }
+        }
+        if (combine == Combine.MEAN) {
+            double scale = 1.0 / buffers.length;
+            for (int o = 0; o < output.length; o++) output[o] *= scale;
+        }
+        return output;
+    }
+
+    private static void activate(Activation a, double[] v) {
+        if (a == Activation.LINEAR) return;
+        for (int i = 0; i < v.length; i++) {
+            v[i] = a.apply(v[i]);
+        }
+    }
+
+    public int inputSize() {
+        return input.length;
+    }
+
+    public int outputSize() {
+        return output.length;
+    }
+
+    public int branchCount() {
+        return buffers.length;
+    }
+
+    public Combine combine() {
+        return combine;
+    }
+
+    public DenseKernel kernel() {
+        return kernel;
+    }
+}
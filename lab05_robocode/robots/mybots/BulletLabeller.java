@@ -0,0 +1,204 @@
+package mybots;
+
+import robocode.Bullet;
+import robocode.Rules;
+
+/**
+ * BulletLabeller
+ * Adds the outcome of a shot to the row that fired it, so the dataset carries a reward label.
+ *
+ * Rows that did not fire pass straight through to the next sink with bullet_hit = -1.
+ * Rows that fired are parked in a small open-addressing hash table (linear probing) keyed by the
+ * bullet's id - Bullet.hashCode() is the id Robocode uses for Bullet.equals(), and it stays the same
+ * in BulletHitEvent/BulletMissedEvent even though those carry a different Bullet object.
+ * When the outcome arrives the label columns are filled in and the row is sent on, so labelled
+ * rows come out in the order their bullets landed, not the order they were fired.
+ *
+ * Everything is kept in primitive arrays and the labeller only runs on the robot thread.
+ */
+public class BulletLabeller implements SampleSink {
+
+    public static final String HIT_COLUMN = "bullet_hit";
+    public static final String DAMAGE_COLUMN = "bullet_damage";
+
+    // Label values for bullet_hit
+    public static final double NO_SHOT = -1;
+    public static final double MISS = 0;
+    public static final double HIT = 1;
+
+    private final SampleSink next;
+    private final int width;
+    private final int hitCol;
+    private final int damageCol;
+
+    // Open addressing table: keys[i] is valid only when used[i]
+    private final int[] keys;
+    private final boolean[] used;
+    private final double[] rows;
+    private final double[] scratch;
+    private final int mask;
+    private int size = 0;
+
+    private long unlabelled = 0;
+
+    /**
+     * @param width      row width, including the two label columns at the end
+     * @param maxInFlight how many shots can wait for an outcome at once
+     */
+    public BulletLabeller(SampleSink next, int width, int maxInFlight) {
+        this.next = next;
+        this.width = width;
+        this.hitCol = width - 2;
+        this.damageCol = width - 1;
+
+        // Keep the table at most half full so probes stay short
+        int cap = Integer.highestOneBit(Math.max(4, maxInFlight * 2 - 1)) << 1;
+        this.keys = new int[cap];
+        this.used = new boolean[cap];
+        this.rows = new double[cap * width];
+        this.scratch = new double[width];
+        this.mask = cap - 1;
+    }
+
+    /**
+     * A row where we did not shoot
+     */
+    public void write(double[] row) {
+        row[hitCol] = NO_SHOT;
+        row[damageCol] = 0;
+        next.write(row);
+    }
+
+    /**
+     * A row where we fired this bullet. The row is held back until the bullet hits or misses.
+     * @param bullet what setFireBullet returned - null if the gun did not actually fire
+     */
+    public void write(double[] row, Bullet bullet) {
+        if (bullet == null) {
+            write(row);
+            return;
+        }
+        if (size * 2 >= keys.length) {
+            // Table at its load limit - better to log the row without a label than to lose it
+            unlabelled++;
+            write(row);
+            return;
+        }
+        int id = bullet.hashCode();
+        int i = mix(id) & mask;
+        while (used[i]) {
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = id;
+        System.arraycopy(row, 0, rows, i * width, width);
+        size++;
+    }
+
+    /**
+     * Our bullet hit a robot (BulletHitEvent)
+     */
+    public void onHit(Bullet bullet) {
+        resolve(bullet, HIT, Rules.getBulletDamage(bullet.getPower()));
+    }
+
+    /**
+     * Our bullet hit a wall or another bullet (BulletMissedEvent / BulletHitBulletEvent)
+     */
+    public void onMiss(Bullet bullet) {
+        resolve(bullet, MISS, 0);
+    }
+
+    private void resolve(Bullet bullet, double hit, double damage) {
+        int id = bullet.hashCode();
+        int i = mix(id) & mask;
+        while (used[i]) {
+            if (keys[i] == id) {
+                int base = i * width;
+                rows[base + hitCol] = hit;
+                rows[base + damageCol] = damage;
+                emit(i);
+                remove(i);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        // Not ours, or fired before logging started - nothing to label
+    }
+
+    private void emit(int slot) {
+        // Rows are stored back to back, but the sink wants a row array
+        System.arraycopy(rows, slot * width, scratch, 0, width);
+        next.write(scratch);
+    }
+
+    /**
+     * Linear probing delete: shift later entries of the same cluster back so lookups still find them
+     */
+    private void remove(int slot) {
+        used[slot] = false;
+        size--;
+        int hole = slot;
+        int i = (slot + 1) & mask;
+        while (used[i]) {
+            int home = mix(keys[i]) & mask;
+            // Move the entry if its home is not between the hole and its current position
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                keys[hole] = keys[i];
+                System.arraycopy(rows, i * width, rows, hole * width, width);
+                used[hole] = true;
+                used[i] = false;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Send on every row still waiting for its bullet (e.g. at the end of a round) as unlabelled
+     */
+    public void flushPending() {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                int base = i * width;
+                rows[base + hitCol] = NO_SHOT;
+                rows[base + damageCol] = 0;
+                emit(i);
+                used[i] = false;
+                unlabelled++;
+            }
+        }
+        size = 0;
+    }
+
+    public void flush() {
+        next.flush();
+    }
+
+    public void close() {
+        flushPending();
+        next.close();
+    }
+
+    public boolean checkError() {
+        return next.checkError();
+    }
+
+    /**
+     * Shots that ended up without a label (table full, or still in flight when a round ended)
+     */
+    public long unlabelled() {
+        return unlabelled;
+    }
+
+    public int inFlight() {
+        return size;
+    }
+
+    // Bullet ids are sequential - spread them over the table
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,41 @@
+package mybots;
+
+/**
+ * CircleStrafePolicy
+ * The "teacher" behaviour DataCollectorBot records: stay perpendicular to the enemy, oscillate
+ * back and forth, fire harder the closer it is. Shared so NeuralNetBot can fall back to exactly
+ * the behaviour its network was trained to imitate. Costs a few comparisons per scan.
+ */
+public class CircleStrafePolicy {
+
+    // moveDist set to 60 for tighter circles that fit in smaller arenas
+    public static final double MOVE_DISTANCE = 60;
+
+    private int moveDirection = 1;  // 1 for forward, -1 for backward
+
+    /**
+     * Actions for one scan, in the order the dataset logs them:
+     * out[0] turn right (degrees), out[1] move ahead distance, out[2] fire power
+     */
+    public void decide(double enemyBearing, double enemyDistance, double[] out) {
+        // Always stay perpendicular to the enemy (Circle Strafe)
+        out[0] = enemyBearing + 90;
+
+        // Oscillate movement to confuse enemy targeting
+        out[1] = MOVE_DISTANCE * moveDirection;
+        if (Math.random() < 0.10) moveDirection *= -1;  // Occasionally reverse
+
+        // Fire logic: Fire hard if close, soft if far
+        double firePower = 1.0;
+        if (enemyDistance < 200) firePower = 3.0;
+        else if (enemyDistance < 400) firePower = 2.0;
+        out[2] = firePower;
+    }
+
+    /**
+     * Turn the oscillation around (after hitting a wall)
+     */
+    public void reverse() {
+        moveDirection *= -1;
+    }
+}
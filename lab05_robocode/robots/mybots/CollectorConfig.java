@@ -0,0 +1,168 @@
+package mybots;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * CollectorConfig
+ * Settings for DataCollectorBot, read from collector.properties in the robot's data directory.
+ * Every key is optional - a missing file or key just means the default is used.
+ */
+public class CollectorConfig {
+
+    public static final String FILE_NAME = "collector.properties";
+
+    private final Properties props;
+
+    private CollectorConfig(Properties props) {
+        this.props = props;
+    }
+
+    /**
+     * Load the config file, or fall back to defaults if it is missing or unreadable
+     */
+    public static CollectorConfig load(File file) {
+        Properties props = new Properties();
+        if (file.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                props.load(in);
+            } catch (IOException e) {
+                // Unreadable config - keep the defaults
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+        return new CollectorConfig(props);
+    }
+
+    /**
+     * "binary" (default) or "csv"
+     */
+    public boolean isBinaryFormat() {
+        return !"csv".equalsIgnoreCase(getString("log.format", "binary"));
+    }
+
+    /**
+     * "float" (default) stores 4-byte values, "double" stores 8-byte values
+     */
+    public boolean useFloatPrecision() {
+        return !"double".equalsIgnoreCase(getString("log.precision", "float"));
+    }
+
+    /**
+     * Queue rows in a ring buffer and write them off the scan handler (default true)
+     */
+    public boolean isAsync() {
+        return getBoolean("log.async", true);
+    }
+
+    /**
+     * Rows the ring buffer can hold before new samples are dropped (default 4096)
+     */
+    public int getRingCapacity() {
+        return getInt("log.ring.capacity", 4096);
+    }
+
+    /**
+     * true (default) drains on a background thread, false drains in one batch at the end of each round
+     */
+    public boolean isBackgroundDrain() {
+        return getBoolean("log.ring.background", true);
+    }
+
+    /**
+     * GZIP the dataset file (default true)
+     */
+    public boolean isCompressed() {
+        return getBoolean("log.compress", true);
+    }
+
+    /**
+     * Track the data quota and fall back to reservoir sampling when it runs low (default true)
+     */
+    public boolean isQuotaAware() {
+        return getBoolean("log.quota.enabled", true);
+    }
+
+    /**
+     * Most rows the reservoir keeps per round once the quota runs low (default 1000)
+     */
+    public int getReservoirRows() {
+        return getInt("log.quota.reservoir", 1000);
+    }
+
+    /**
+     * Bytes of quota kept free per round for the manifest (default 1024)
+     */
+    public long getRoundOverhead() {
+        return getInt("log.quota.round_overhead", 1024);
+    }
+
+    /**
+     * Input features to log: "legacy" (default, the original 7), "enriched", or a comma separated
+     * list of column names - see FeatureExtractor.Feature
+     */
+    public String getFeatures() {
+        return getString("features", "legacy");
+    }
+
+    /**
+     * Row sampling policy: all (default), change, reservoir or stratified - see Sampler
+     */
+    public String getSamplePolicy() {
+        return getString("sample.policy", "all");
+    }
+
+    /**
+     * Time the scan handler and write tick_profile.txt at battle end (default true)
+     */
+    public boolean isProfiling() {
+        return getBoolean("profile.enabled", true);
+    }
+
+    /**
+     * Per-turn CPU budget in nanoseconds (robocode.cpu.constant), used by the profile report
+     */
+    public long getTurnBudgetNanos() {
+        try {
+            return Long.parseLong(getString("profile.turn_budget_ns", Long.toString(TickProfiler.DEFAULT_TURN_BUDGET_NANOS)));
+        } catch (NumberFormatException e) {
+            return TickProfiler.DEFAULT_TURN_BUDGET_NANOS;
+        }
+    }
+
+    public String getString(String key, String def) {
+        String value = props.getProperty(key);
+        return value == null ? def : value.trim();
+    }
+
+    public int getInt(String key, int def) {
+        try {
+            return Integer.parseInt(getString(key, Integer.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public double getDouble(String key, double def) {
+        try {
+            return Double.parseDouble(getString(key, Double.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean def) {
+        return Boolean.parseBoolean(getString(key, Boolean.toString(def)));
+    }
+}
@@ -0,0 +1,33 @@
+package mybots;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CountingOutputStream
+ * Counts the bytes that actually reach the file, after any compression,
+ * so we know how much of the robot's data quota we have used.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private long count = 0;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,41 @@
+package mybots;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * CsvSampleSink
+ * The original text format: a header line followed by one comma separated line per row.
+ * Kept so training.py can still read the data with pandas.read_csv.
+ */
+public class CsvSampleSink implements SampleSink {
+
+    private final PrintStream ps;
+
+    public CsvSampleSink(OutputStream out, String[] columns) {
+        // No autoflush - that made every row a separate write to disk
+        ps = new PrintStream(new BufferedOutputStream(out, 8192), false);
+        ps.println(String.join(",", columns));
+    }
+
+    public void write(double[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) ps.print(',');
+            ps.print(row[i]);
+        }
+        ps.println();
+    }
+
+    public void flush() {
+        ps.flush();
+    }
+
+    public void close() {
+        ps.close();
+    }
+
+    public boolean checkError() {
+        return ps.checkError();
+    }
+}
@@ -3,18 +3,69 @@ package mybots;
 import robocode.*;
 import robocode.util.Utils;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.util.Arrays;
 
 /**
  * DataCollectorBot
- * A robot that uses Circle Strafing - saving its sensory data and its reaction decisions to a CSV file
+ * A robot that uses Circle Strafing - saving its sensory data and its reaction decisions to a dataset.
+ * Every round is its own file (training_data.r0000.bin.gz, ...) listed in training_data.manifest.
+ * Binary records by default, or CSV - see collector.properties.
  */
 public class DataCollectorBot extends AdvancedRobot {
 
-    PrintStream logger;
-    int moveDirection = 1;  // 1 for forward, -1 for backward
+    // The 3 logged actions - they follow the features in every row
+    static final String[] ACTION_COLUMNS = {"turn_rate", "move_distance", "fire_power"};
 
-    // We will log these 7 inputs:
+    // Which robot the row is about and how many were still alive - for splitting melee data
+    static final String[] TAG_COLUMNS = {"opponent_id", "others"};
+
+    // Outcome of the shot fired on that scan - always the last 2 columns (see BulletLabeller)
+    static final String[] LABEL_COLUMNS = {BulletLabeller.HIT_COLUMN, BulletLabeller.DAMAGE_COLUMN};
+
+    // Computes the input columns (configurable with "features" in collector.properties)
+    static FeatureExtractor features;
+
+    // Column names written to the dataset header: features, actions, tags, then labels
+    static String[] columns;
+
+    // Static because Robocode creates a new robot instance every round,
+    // but the logger has to stay open for the whole battle
+    static SampleSink logger;
+
+    // First stage of the logger - holds rows that fired until their bullet hits or misses
+    static BulletLabeller labeller;
+
+    // Thins out near duplicate rows (sample.policy in collector.properties)
+    static Sampler sampler;
+
+    // Set when logging goes through the ring buffer, so each round can start/stop its drainer
+    static AsyncSampleSink asyncLogger;
+
+    // Set when the data quota is being tracked (see collector.properties)
+    static QuotaAwareSink quotaLogger;
+
+    // Splits the dataset into one file per round and keeps the manifest
+    static SegmentedSink segmentLogger;
+
+    // True while a round's segment is open
+    static boolean roundOpen = false;
+
+    // Handler timing for the whole battle (null when profile.enabled=false)
+    static TickProfiler profiler;
+    static int spanScan;
+    static int spanLogging;
+
+    // Rows handed to the logger this battle
+    static long rowsLogged = 0;
+
+    // Reused for every scan so logging does not allocate
+    double[] row;
+
+    // The behaviour being recorded (also NeuralNetBot's fallback)
+    CircleStrafePolicy teacher = new CircleStrafePolicy();
+    double[] actions = new double[3];
+
+    // By default we log these 7 inputs (see FeatureExtractor for the full list):
     // 1. Enemy Distance
     // 2. Enemy Bearing (relative to our heading)
     // 3. Enemy Velocity
@@ -23,7 +74,7 @@ public class DataCollectorBot extends AdvancedRobot {
     // 6. Distance to Nearest Wall
     // 7. Bearing to Nearest Wall
 
-    // We will log these 3 outputs (actions):
+    // Followed by these 3 outputs (actions):
     // 1. Body Turn Rate (degrees)
     // 2. Move Distance
     // 3. Fire Power
@@ -32,25 +83,31 @@ public class DataCollectorBot extends AdvancedRobot {
         // Only initialize the logger once per battle (in Round 0)
         // Keep it open across all rounds to collect data continuously
         if (getRoundNum() == 0) {
+            CollectorConfig config = CollectorConfig.load(getDataFile(CollectorConfig.FILE_NAME));
             try {
-                logger = new PrintStream(new RobocodeFileOutputStream(getDataFile("training_data.csv")), true);
-                
-                // Write CSV header
-                logger.println("enemy_distance,enemy_bearing,enemy_velocity,my_energy,enemy_energy,wall_distance,wall_bearing,turn_rate,move_distance,fire_power");
-
-                if (logger.checkError()) {
-                    out.println("[DataCollector] ERROR: Failed to write CSV header!");
-                } else {
-                    out.println("[DataCollector] CSV header written successfully!");
-                }
-            } catch (IOException e) {
-                out.println("[DataCollector] ERROR initializing logger: " + e.getMessage());
-                e.printStackTrace(out);
+                features = FeatureExtractor.parse(config.getFeatures());
+            } catch (IllegalArgumentException e) {
+                out.println("[DataCollector] ERROR in features setting, using the legacy 7: " + e.getMessage());
+                features = new FeatureExtractor(FeatureExtractor.LEGACY);
             }
+            columns = concat(features.columnNames(), ACTION_COLUMNS, TAG_COLUMNS, LABEL_COLUMNS);
+            if (config.isProfiling()) {
+                profiler = new TickProfiler(config.getTurnBudgetNanos());
+                spanScan = profiler.addSpan("onScannedRobot");
+                spanLogging = profiler.addSpan("logging");
+            }
+            logger = openLogger(config);
         } else {
             out.println("[DataCollector] Round " + getRoundNum() + " - Logger already open, continuing to log...");
         }
 
+        if (profiler != null) profiler.onRoundStarted();
+
+        // Each round gets its own segment file
+        row = new double[columns.length];
+        features.reset();
+        startRoundLogging();
+
         setAdjustGunForRobotTurn(true);
         setAdjustRadarForGunTurn(true);
 
@@ -60,25 +117,22 @@ public class DataCollectorBot extends AdvancedRobot {
     }
 
     public void onScannedRobot(ScannedRobotEvent e) {
-        // --- 1. THE LOGIC (The "Teacher" behavior) ---
+        long scanStart = System.nanoTime();
 
-        // Always stay perpendicular to the enemy (Circle Strafe)
-        setTurnRight(e.getBearing() + 90);
+        // --- 1. THE LOGIC (The "Teacher" behavior) ---
 
-        // Oscillate movement to confuse enemy targeting
-        // moveDist set to 60 for tighter circles that fit in smaller arenas
-        double moveDist = 60 * moveDirection;
-        if (Math.random() < 0.10) moveDirection *= -1;  // Occasionally reverse
+        // Circle strafe, oscillate, fire harder when close - see CircleStrafePolicy
+        teacher.decide(e.getBearing(), e.getDistance(), actions);
+        setTurnRight(actions[0]);
+        double moveDist = actions[1];
         setAhead(moveDist);
-
-        // Fire logic: Fire hard if close, soft if far
-        double firePower = 1.0;
-        if (e.getDistance() < 200) firePower = 3.0;
-        else if (e.getDistance() < 400) firePower = 2.0;
+        double firePower = actions[2];
 
         // Only fire if gun is cool
+        // Keep the Bullet so the logged row can be labelled with its outcome later
+        Bullet bullet = null;
         if (getGunHeat() == 0) {
-            setFire(firePower);
+            bullet = setFireBullet(firePower);
         }
 
         // Basic Radar Lock (Keep radar focused on enemy)
@@ -93,107 +147,242 @@ public class DataCollectorBot extends AdvancedRobot {
         // --- 2. THE LOGGING ---
 
         if (logger != null) {
-            // Calculate wall proximity
-            double wallDist = getDistanceToNearestWall();
-            double wallBearing = getBearingToNearestWall();
-
-            // INPUTS
-            logger.print(e.getDistance() + ",");
-            logger.print(e.getBearing() + ",");
-            logger.print(e.getVelocity() + ",");
-            logger.print(getEnergy() + ",");
-            logger.print(e.getEnergy() + ",");
-            logger.print(wallDist + ",");
-            logger.print(wallBearing + ",");
+            long logStart = System.nanoTime();
+
+            // INPUTS - the same vector NeuralNetBot feeds to the network
+            double[] inputs = features.extract(this, e);
+            int n = inputs.length;
+            System.arraycopy(inputs, 0, row, 0, n);
 
             // OUTPUTS (The actions we just set)
             // Note: We log 'e.getBearing() + 90' because that was our logic for turning
-            logger.print((e.getBearing() + 90) + ",");
-            logger.print(moveDist + ",");
-            logger.print(firePower);
+            row[n] = e.getBearing() + 90;
+            row[n + 1] = moveDist;
+            row[n + 2] = firePower;
 
-            logger.println(); // New line
+            // TAGS - in melee every row says which opponent it is about
+            row[n + 3] = features.lastOpponentId();
+            row[n + 4] = getOthers();
 
-            // Check for write errors
-            if (logger.checkError()) {
-                out.println("[DataCollector] ERROR: Failed to write data at time " + getTime());
-            }
+            // Only a copy into the ring buffer when async logging is on.
+            // Write errors and dropped rows are reported at the end of the round, not here,
+            // so a scan never allocates or waits on the disk.
+            labeller.write(row, bullet);
+            rowsLogged++;
 
-            // Periodic confirmation (every 100 scans)
-            if (getTime() % 100 == 0) {
-                out.println("[DataCollector] Data logged successfully at time " + getTime());
-            }
+            if (profiler != null) profiler.record(spanLogging, logStart);
         } else {
             out.println("[DataCollector] WARNING: Logger is null at time " + getTime());
         }
+
+        if (profiler != null) profiler.record(spanScan, scanStart);
+    }
+
+    public void onSkippedTurn(SkippedTurnEvent e) {
+        if (profiler != null) profiler.onSkippedTurn();
     }
 
     public void onHitWall(HitWallEvent e) {
         // Wall collision - teach the bot to reverse direction
-        moveDirection *= -1;
+        teacher.reverse();
         setBack(100);  // Back away from wall
     }
 
+    public void onBulletHit(BulletHitEvent e) {
+        if (labeller != null) labeller.onHit(e.getBullet());
+    }
+
+    public void onBulletMissed(BulletMissedEvent e) {
+        if (labeller != null) labeller.onMiss(e.getBullet());
+    }
+
+    public void onBulletHitBullet(BulletHitBulletEvent e) {
+        if (labeller != null) labeller.onMiss(e.getBullet());
+    }
+
+    public void onRoundEnded(RoundEndedEvent e) {
+        if (logger == null) return;
+
+        finishRoundLogging();
+
+        if (logger.checkError()) {
+            out.println("[DataCollector] ERROR: Failed to write data in round " + e.getRound());
+        } else {
+            out.println("[DataCollector] Round " + e.getRound() + " done - " + rowsLogged + " rows logged so far");
+        }
+        if (asyncLogger != null && asyncLogger.dropped() > 0) {
+            out.println("[DataCollector] WARNING: Ring buffer full - dropped " + asyncLogger.dropped()
+                    + " samples so far (capacity " + asyncLogger.capacity() + ")");
+        }
+    }
+
     public void onBattleEnded(BattleEndedEvent e) {
+        if (profiler != null) {
+            try {
+                profiler.writeReport(getDataFile("tick_profile.txt"));
+                out.println("[DataCollector] Tick profile saved - " + profiler.skippedTurns() + " skipped turns");
+            } catch (IOException ex) {
+                out.println("[DataCollector] ERROR writing tick profile: " + ex.getMessage());
+            }
+            profiler = null;
+        }
+
         if (logger != null) {
-            logger.flush();  // Ensure all buffered data is written before closing
-            logger.close();
-            out.println("[DataCollector] Data collection finished. CSV saved.");
+            logger.close();  // Flushes any buffered rows before closing
+            if (asyncLogger != null && asyncLogger.dropped() > 0) {
+                out.println("[DataCollector] Dropped " + asyncLogger.dropped() + " of " + rowsLogged + " samples (ring buffer full)");
+            }
+            out.println("[DataCollector] " + segmentLogger.segmentCount() + " segments, " + segmentLogger.bytesWritten()
+                    + " bytes written, " + getDataQuotaAvailable() + " bytes of quota left");
+            logger = null;
+            out.println("[DataCollector] Saw " + features.opponents().size() + " opponents (ids in the opponent_id column):");
+            for (int i = 0; i < features.opponents().size(); i++) {
+                out.println("[DataCollector]   " + i + " = " + features.opponents().nameOf(i));
+            }
+            out.println("[DataCollector] Sampler (" + sampler.policy() + ") kept " + sampler.kept() + " of "
+                    + sampler.seen() + " rows");
+            labeller = null;
+            sampler = null;
+            asyncLogger = null;
+            quotaLogger = null;
+            segmentLogger = null;
+            roundOpen = false;
+            out.println("[DataCollector] Data collection finished. Dataset saved.");
         } else {
             out.println("[DataCollector] ERROR: Logger was never opened!");
         }
     }
 
+    private static String[] concat(String[]... parts) {
+        int n = 0;
+        for (String[] p : parts) n += p.length;
+        String[] all = new String[n];
+        int pos = 0;
+        for (String[] p : parts) {
+            System.arraycopy(p, 0, all, pos, p.length);
+            pos += p.length;
+        }
+        return all;
+    }
+
     /**
-     * Calculate distance to the nearest wall
+     * Set up the logging chain in the format chosen by collector.properties:
+     * bullet labeller -> sampler -> ring buffer -> quota guard -> one segment file per round
      */
-    private double getDistanceToNearestWall() {
-        double x = getX();
-        double y = getY();
-        double width = getBattleFieldWidth();
-        double height = getBattleFieldHeight();
-
-        // Distance to each wall
-        double distLeft = x;
-        double distRight = width - x;
-        double distBottom = y;
-        double distTop = height - y;
-
-        // Return minimum distance
-        return Math.min(Math.min(distLeft, distRight), Math.min(distBottom, distTop));
+    private SampleSink openLogger(CollectorConfig config) {
+        segmentLogger = new SegmentedSink(getDataDirectory(), columns, config.isBinaryFormat(),
+                config.useFloatPrecision(), config.isCompressed());
+        segmentLogger.setOpponents(features.opponents());
+        out.println("[DataCollector] Logging to " + segmentLogger.segmentName(0) + " and following segments");
+        SampleSink sink = segmentLogger;
+
+        if (config.isQuotaAware()) {
+            int maxRecordBytes = segmentLogger.maxRecordBytes();
+            // Anything sitting in the sink, gzip or stream buffers has not been counted yet
+            long pending = Math.max(8192, maxRecordBytes * 256) + 8192 + 8192;
+            final SegmentedSink segments = segmentLogger;
+            quotaLogger = new QuotaAwareSink(sink, segments::bytesWritten, config.getReservoirRows(), columns.length,
+                    maxRecordBytes, pending, config.getRoundOverhead());
+            out.println("[DataCollector] " + getDataQuotaAvailable() + " bytes of data quota available");
+            sink = quotaLogger;
+        }
+
+        if (config.isAsync()) {
+            asyncLogger = new AsyncSampleSink(sink, config.getRingCapacity(), columns.length, config.isBackgroundDrain());
+            sink = asyncLogger;
+        }
+
+        sampler = openSampler(config, sink);
+        out.println("[DataCollector] Sampling policy: " + sampler.policy());
+
+        // At most ~15 of our bullets can be in the air at once, 32 leaves plenty of room
+        labeller = new BulletLabeller(sampler, columns.length, 32);
+        return labeller;
     }
 
     /**
-     * Calculate bearing to the nearest wall (relative to current heading)
+     * Build the sampler chosen by sample.policy
      */
-    private double getBearingToNearestWall() {
-        double x = getX();
-        double y = getY();
-        double width = getBattleFieldWidth();
-        double height = getBattleFieldHeight();
-
-        // Distance to each wall
-        double distLeft = x;
-        double distRight = width - x;
-        double distBottom = y;
-        double distTop = height - y;
-
-        // Find which wall is nearest
-        double minDist = Math.min(Math.min(distLeft, distRight), Math.min(distBottom, distTop));
-
-        // Calculate absolute bearing to nearest wall
-        double absBearing;
-        if (minDist == distLeft) {
-            absBearing = 270;  // West
-        } else if (minDist == distRight) {
-            absBearing = 90;   // East
-        } else if (minDist == distBottom) {
-            absBearing = 180;  // South
-        } else {
-            absBearing = 0;    // North
+    private Sampler openSampler(CollectorConfig config, SampleSink next) {
+        String policy = config.getSamplePolicy();
+        int width = columns.length;
+        if (policy.equalsIgnoreCase("change")) {
+            // Compare features and actions, not the labels that are filled in later
+            return Sampler.change(next, width, width - LABEL_COLUMNS.length,
+                    config.getDouble("sample.change.threshold", 0.02), config.getInt("sample.change.max_gap", 30));
+        }
+        if (policy.equalsIgnoreCase("reservoir")) {
+            return Sampler.reservoir(next, width, config.getInt("sample.reservoir.rows", 2000));
         }
+        if (policy.equalsIgnoreCase("stratified")) {
+            int column = Arrays.asList(columns).indexOf(config.getString("sample.stratified.column", "enemy_distance"));
+            if (column >= 0) {
+                return Sampler.stratified(next, width, column, config.getDouble("sample.stratified.bucket_width", 100),
+                        config.getInt("sample.stratified.buckets", 10), config.getInt("sample.stratified.rows_per_bucket", 200));
+            }
+            out.println("[DataCollector] ERROR: sample.stratified.column is not a logged column - keeping every row");
+        } else if (!policy.equalsIgnoreCase("all")) {
+            out.println("[DataCollector] ERROR: unknown sample.policy '" + policy + "' - keeping every row");
+        }
+        return Sampler.all(next, width);
+    }
 
-        // Convert to relative bearing
-        return Utils.normalRelativeAngleDegrees(absBearing - getHeading());
+    /**
+     * Open this round's segment, work out its share of the quota and start the drainer
+     */
+    private void startRoundLogging() {
+        if (logger == null) return;
+        // The last round never got its onRoundEnded - finish it now so no rows are lost
+        if (roundOpen) finishRoundLogging();
+
+        try {
+            segmentLogger.beginSegment(getRoundNum());
+        } catch (IOException e) {
+            out.println("[DataCollector] ERROR opening segment for round " + getRoundNum() + ": " + e.getMessage());
+            e.printStackTrace(out);
+            return;
+        }
+        roundOpen = true;
+
+        if (segmentLogger.checkError()) {
+            out.println("[DataCollector] ERROR: Failed to write dataset header!");
+        }
+
+        // Last round was flushed in finishRoundLogging, so the quota Robocode reports is up to date
+        if (quotaLogger != null) {
+            quotaLogger.beginRound(getDataQuotaAvailable(), getNumRounds() - getRoundNum());
+        }
+
+        // Robocode stops our threads between rounds, so the drainer is restarted every round
+        if (asyncLogger != null) {
+            asyncLogger.start();
+        }
+    }
+
+    /**
+     * Write out everything queued this round and close its segment
+     */
+    private void finishRoundLogging() {
+        if (!roundOpen) return;
+        roundOpen = false;
+
+        if (asyncLogger != null) {
+            asyncLogger.stop();
+        }
+
+        // Bullets still in the air will never land - log their rows unlabelled.
+        // Then write the sampler's picks for this round (the ring is stopped, so these go straight through)
+        labeller.flushPending();
+        sampler.endRound();
+
+        long sampledFrom = 0;
+        if (quotaLogger != null) {
+            if (quotaLogger.isSampling()) {
+                out.println("[DataCollector] Data quota low - kept a random " + Math.min(quotaLogger.reservoirLimit(),
+                        quotaLogger.sampledFrom()) + " of the last " + quotaLogger.sampledFrom() + " rows this round");
+            }
+            sampledFrom = quotaLogger.endRound();
+        }
+        segmentLogger.endSegment(sampledFrom);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package mybots;
+
+/**
+ * Dataset
+ * A loaded training dataset: column names plus every value in one flat row-major double[].
+ * Value (row r, column c) lives at data[r * columns + c].
+ */
+public class Dataset {
+
+    public final String[] columnNames;
+    public final double[] data;
+    public final int rows;
+    public final int columns;
+
+    public Dataset(String[] columnNames, double[] data, int rows) {
+        this.columnNames = columnNames;
+        this.data = data;
+        this.rows = rows;
+        this.columns = columnNames.length;
+    }
+
+    public double get(int row, int column) {
+        return data[row * columns + column];
+    }
+
+    /**
+     * @return index of the named column, or -1 if the dataset does not have it
+     */
+    public int columnIndex(String name) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Stack datasets with the same columns into one
+     */
+    public static Dataset concat(Dataset[] parts) {
+        if (parts.length == 1) return parts[0];
+        int total = 0;
+        for (Dataset d : parts) {
+            if (d.columns != parts[0].columns) {
+                throw new IllegalArgumentException("Datasets have different column counts");
+            }
+            total += d.rows;
+        }
+        int width = parts[0].columns;
+        double[] all = new double[total * width];
+        int pos = 0;
+        for (Dataset d : parts) {
+            System.arraycopy(d.data, 0, all, pos, d.rows * width);
+            pos += d.rows * width;
+        }
+        return new Dataset(parts[0].columnNames, all, total);
+    }
+}
@@ -0,0 +1,347 @@
+package mybots;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * DatasetLoader
+ * Loads DataCollectorBot datasets for offline tools (trainers, converters, reports).
+ * Not used by the robots themselves.
+ *
+ * Plain files are memory-mapped with FileChannel.map and parsed straight from the mapped bytes
+ * into a flat double[] - no per-line Strings. CSV numbers match Double.parseDouble bit for bit:
+ * the common short ones are converted directly, the rest (see scale) go through it. Understands:
+ *   - CSV with a header line (training_data.csv and .csv segments)
+ *   - the binary record format written by BinarySampleSink (.bin segments)
+ *   - either of those GZIP compressed (.gz - inflated into memory first, gzip cannot be mapped)
+ *   - training_data.manifest, loading all or some of its segments in parallel
+ *
+ * Usage: java mybots.DatasetLoader &lt;file or manifest&gt; [--verify]
+ */
+public class DatasetLoader {
+
+    // Largest mantissa a double holds exactly, and POW10 covers the exact powers of ten
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    /**
+     * Load a single dataset file, or every segment if it is a manifest
+     */
+    public static Dataset load(File file) throws IOException {
+        if (file.getName().endsWith(".manifest")) {
+            return loadManifest(file, null, false);
+        }
+        return parse(readBytes(file));
+    }
+
+    /**
+     * Load segments listed in a manifest, in parallel
+     * @param segments indices of the segments to load, or null for all of them
+     * @param verify   check every segment file against the manifest CRC32
+     */
+    public static Dataset loadManifest(File manifest, int[] segments, boolean verify) throws IOException {
+        final Properties props = readManifest(manifest);
+        int count = Integer.parseInt(props.getProperty("dataset.segments", "0"));
+        if (segments == null) {
+            segments = IntStream.range(0, count).toArray();
+        }
+        if (segments.length == 0) {
+            throw new IOException(manifest + " lists no segments");
+        }
+
+        final File dir = manifest.getAbsoluteFile().getParentFile();
+        final int[] chosen = segments;
+        final boolean check = verify;
+        final Dataset[] parts = new Dataset[chosen.length];
+        final IOException[] failure = new IOException[1];
+
+        IntStream.range(0, chosen.length).parallel().forEach(i -> {
+            String prefix = "segment." + chosen[i] + ".";
+            try {
+                File f = new File(dir, props.getProperty(prefix + "file"));
+                ByteBuffer bytes = map(f);
+                if (check) {
+                    verifyCrc(f, bytes, props.getProperty(prefix + "crc32"));
+                }
+                parts[i] = parse(isGzip(bytes) ? inflate(f) : bytes);
+            } catch (IOException e) {
+                synchronized (failure) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return Dataset.concat(parts);
+    }
+
+    /**
+     * Read a manifest written by SegmentedSink
+     */
+    public static Properties readManifest(File manifest) throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(manifest);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        return props;
+    }
+
+    private static void verifyCrc(File f, ByteBuffer bytes, String expected) throws IOException {
+        if (expected == null) return;
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        if (crc.getValue() != Long.parseLong(expected, 16)) {
+            throw new IOException(f + " does not match its manifest checksum");
+        }
+    }
+
+    /**
+     * Memory-map a plain file, or inflate a gzip file into memory
+     */
+    static ByteBuffer readBytes(File file) throws IOException {
+        ByteBuffer bytes = map(file);
+        return isGzip(bytes) ? inflate(file) : bytes;
+    }
+
+    static MappedByteBuffer map(File file) throws IOException {
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            ch.close();  // the mapping stays valid after the channel is closed
+        }
+    }
+
+    private static boolean isGzip(ByteBuffer b) {
+        return b.limit() >= 2 && (b.get(0) & 0xff) == 0x1f && (b.get(1) & 0xff) == 0x8b;
+    }
+
+    private static ByteBuffer inflate(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file), 65536);
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE / 2, file.length() * 4));
+            byte[] chunk = new byte[65536];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                buf.write(chunk, 0, n);
+            }
+            return ByteBuffer.wrap(buf.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parse raw (already inflated) dataset bytes in either format
+     */
+    public static Dataset parse(ByteBuffer bytes) throws IOException {
+        ByteBuffer b = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.limit() >= 4 && b.getInt(0) == BinarySampleSink.MAGIC) {
+            return parseBinary(b);
+        }
+        return parseCsv(b);
+    }
+
+    private static Dataset parseBinary(ByteBuffer b) throws IOException {
+        int version = b.getShort(4) & 0xffff;
+        int valueBytes = b.get(6);
+        int columns = b.getInt(8);
+        int dataOffset = b.getInt(12);
+        if (version != BinarySampleSink.VERSION || (valueBytes != 4 && valueBytes != 8)) {
+            throw new IOException("Unsupported dataset version " + version + " / value size " + valueBytes);
+        }
+
+        String[] names = new String[columns];
+        int pos = BinarySampleSink.HEADER_FIXED_BYTES;
+        for (int i = 0; i < columns; i++) {
+            int len = b.getShort(pos) & 0xffff;
+            byte[] name = new byte[len];
+            b.position(pos + 2);
+            b.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            pos += 2 + len;
+        }
+
+        // A crash can leave a partial record at the end - ignore it
+        int rows = (b.limit() - dataOffset) / (columns * valueBytes);
+        double[] data = new double[rows * columns];
+        b.position(dataOffset);
+        if (valueBytes == 8) {
+            b.asDoubleBuffer().get(data);
+        } else {
+            FloatBuffer fb = b.asFloatBuffer();
+            for (int i = 0; i < data.length; i++) {
+                data[i] = fb.get(i);
+            }
+        }
+        return new Dataset(names, data, rows);
+    }
+
+    private static Dataset parseCsv(ByteBuffer b) throws IOException {
+        int limit = b.limit();
+
+        // Header line - the only Strings we create
+        int pos = 0;
+        while (pos < limit && b.get(pos) != '\n') pos++;
+        byte[] headerBytes = new byte[pos];
+        b.position(0);
+        b.get(headerBytes);
+        String[] names = new String(headerBytes, StandardCharsets.UTF_8).trim().split(",");
+        int columns = names.length;
+        pos++;
+
+        // Guess the row count from the size so we rarely have to grow
+        double[] data = new double[Math.max(columns, (int) ((long) (limit - pos) / Math.max(1, columns * 8)) * columns)];
+        int count = 0;
+        int col = 0;
+
+        while (pos < limit) {
+            byte c = b.get(pos);
+            if (c == '\n' || c == '\r') {
+                pos++;
+                continue;
+            }
+
+            // Parse one number: sign, digits, fraction, exponent
+            boolean negative = false;
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                pos++;
+            }
+            int start = pos;
+            double value;
+            if (pos < limit && (b.get(pos) == 'N' || b.get(pos) == 'I')) {
+                // Java writes NaN and Infinity as words
+                value = b.get(pos) == 'N' ? Double.NaN : Double.POSITIVE_INFINITY;
+                while (pos < limit && Character.isLetter(b.get(pos))) pos++;
+            } else {
+                long mantissa = 0;
+                int digits = 0;
+                int exp10 = 0;
+                // Set when a non-zero digit past the 18th had to be dropped
+                boolean truncated = false;
+                while (pos < limit && (c = b.get(pos)) >= '0' && c <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0) digits++;
+                    } else {
+                        truncated |= c != '0';
+                        exp10++;
+                    }
+                    pos++;
+                }
+                if (pos < limit && b.get(pos) == '.') {
+                    pos++;
+                    while (pos < limit && (c = b.get(pos)) >= '0' && c <= '9') {
+                        if (digits < 18) {
+                            mantissa = mantissa * 10 + (c - '0');
+                            if (mantissa != 0) digits++;
+                            exp10--;
+                        } else {
+                            truncated |= c != '0';
+                        }
+                        pos++;
+                    }
+                }
+                if (pos < limit && ((c = b.get(pos)) == 'E' || c == 'e')) {
+                    pos++;
+                    boolean expNegative = false;
+                    if (b.get(pos) == '-' || b.get(pos) == '+') {
+                        expNegative = b.get(pos) == '-';
+                        pos++;
+                    }
+                    int e = 0;
+                    while (pos < limit && (c = b.get(pos)) >= '0' && c <= '9') {
+                        e = e * 10 + (c - '0');
+                        pos++;
+                    }
+                    exp10 += expNegative ? -e : e;
+                }
+                value = truncated ? Double.NaN : scale(mantissa, exp10);
+                if (Double.isNaN(value)) value = parseSlow(b, start, pos);
+            }
+
+            if (count == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[count++] = negative ? -value : value;
+            col++;
+
+            // Skip the separator
+            if (pos < limit) {
+                c = b.get(pos);
+                if (c == ',') {
+                    pos++;
+                } else if (c == '\n' || c == '\r') {
+                    if (col != columns) throw new IOException("Row " + (count / columns) + " has " + col + " values");
+                    col = 0;
+                } else {
+                    throw new IOException("Unexpected character '" + (char) c + "' at byte " + pos);
+                }
+            }
+        }
+
+        // Drop a partial last row (e.g. the file was cut off mid-write)
+        int rows = count / columns;
+        return new Dataset(names, Arrays.copyOf(data, rows * columns), rows);
+    }
+
+    /**
+     * mantissa * 10^exp10, or NaN when that cannot be done exactly. Exact (so equal to
+     * Double.parseDouble) when the mantissa fits in 53 bits and |exp10| <= 22: both operands are
+     * then exact doubles and one correctly rounded multiply or divide gives the nearest double.
+     * Longer mantissas - Double.toString often writes 17 digits - would be off by up to 2 ulp.
+     */
+    private static double scale(long mantissa, int exp10) {
+        if (mantissa > MAX_EXACT_MANTISSA || exp10 < -22 || exp10 > 22) return Double.NaN;
+        double m = mantissa;
+        if (exp10 == 0) return m;
+        return exp10 > 0 ? m * POW10[exp10] : m / POW10[-exp10];
+    }
+
+    /**
+     * Double.parseDouble of the unsigned number in bytes [start, end) - the fallback for scale
+     */
+    private static double parseSlow(ByteBuffer b, int start, int end) {
+        byte[] digits = new byte[end - start];
+        for (int i = 0; i < digits.length; i++) digits[i] = b.get(start + i);
+        return Double.parseDouble(new String(digits, StandardCharsets.US_ASCII));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.DatasetLoader <dataset file or training_data.manifest> [--verify]");
+            return;
+        }
+        File file = new File(args[0]);
+        boolean verify = args.length > 1 && args[1].equals("--verify");
+
+        long start = System.nanoTime();
+        Dataset d = file.getName().endsWith(".manifest") ? loadManifest(file, null, verify) : load(file);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        System.out.println("Loaded " + d.rows + " rows x " + d.columns + " columns in " + micros + " us");
+        System.out.println("Columns: " + String.join(",", d.columnNames));
+    }
+}
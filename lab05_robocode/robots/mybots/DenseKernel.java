@@ -0,0 +1,49 @@
+package mybots;
+
+/**
+ * DenseKernel
+ * The matrix-vector product behind every dense layer: output = W * input + bias, optionally
+ * followed by ReLU in the same pass. W is row-major [out][in] inside a packed parameter array
+ * (see InferenceEngine).
+ *
+ * Two implementations: ScalarKernel (plain Java, always available) and VectorKernel (Java
+ * Vector API, needs JDK 16+ started with --add-modules jdk.incubator.vector; its source is in
+ * robots-vector/). InferenceEngine picks one with select() once at startup.
+ */
+public interface DenseKernel {
+
+    /**
+     * @param p      packed parameters
+     * @param w      offset of the [out][in] weights in p
+     * @param b      offset of the biases in p
+     * @param input  layer input, length = in
+     * @param output layer output, length = out
+     * @param relu   clamp negative outputs to 0
+     */
+    void dense(double[] p, int w, int b, double[] input, double[] output, boolean relu);
+
+    /**
+     * Short name for logs and benchmark output
+     */
+    String name();
+
+    /**
+     * @param name "scalar", "vector" or "auto"; anything but "scalar" tries VectorKernel and falls
+     *             back to ScalarKernel when its class was not compiled, the module is missing
+     *             or VectorKernel.isSupported() says the CPU has no SIMD doubles
+     */
+    static DenseKernel select(String name) {
+        if (!"scalar".equalsIgnoreCase(name)) {
+            try {
+                // Loaded by name so this file, and the robot, still compile and run without the module
+                Class<?> vector = Class.forName("mybots.VectorKernel");
+                if ((Boolean) vector.getMethod("isSupported").invoke(null)) {
+                    return (DenseKernel) vector.getDeclaredConstructor().newInstance();
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not compiled, or NoClassDefFoundError without the module
+            }
+        }
+        return new ScalarKernel();
+    }
+}
@@ -0,0 +1,301 @@
+package mybots;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * EvolutionTrainer
+ * Improves NeuralNetBot beyond the circle-strafe teacher it was trained to copy, using battle
+ * results as the reward. Evolution strategies (antithetic sampling, centered-rank fitness):
+ * every generation perturbs the weights with Gaussian noise, +sigma*eps and -sigma*eps for each
+ * eps, lets every perturbed bot fight the opponents, and moves the weights towards the noise
+ * that scored better:
+ *   theta += lr / (population * sigma) * sum_k (rank(theta + sigma*eps_k) - rank(theta - sigma*eps_k)) * eps_k
+ * Fitness is BattleEvaluator's score share, averaged over the opponents.
+ *
+ * It starts from the imitation weights (neural_weights.txt) and keeps their features and
+ * normalization; only the layer parameters evolve. Rollouts run on a BattleEvaluator.Pool, one
+ * worker JVM per core, kept up for the whole run. The unperturbed weights are evaluated with
+ * every generation too, so the log shows real progress against the starting point.
+ *
+ * The best weights are judged by their mean fitness, not their single luckiest evaluation: the
+ * current best fights again every generation next to the unperturbed weights, so its fitness is
+ * a running mean. Unperturbed weights that beat that mean on one evaluation are evaluated again
+ * until they have as many evaluations as the best (at most CONFIRM_EVALUATIONS), and replace it
+ * only if their mean is still higher. The best is kept as neural_weights.txt / .bin (ready for
+ * NeuralNetBot.data) and checkpoints/best.bin.
+ *
+ * After every generation it writes checkpoints/checkpoint_gNNNN.bin (the updated weights) and
+ * es_state.properties into the output directory; --resume continues from there and fails if
+ * there is no state to resume.
+ *
+ * Usage: java -cp "libs/*;robots" mybots.EvolutionTrainer
+ *            [--init robots/mybots/NeuralNetBot.data/neural_weights.txt] [--resume]
+ *            [--generations 20] [--population 8] [--sigma 0.02] [--lr 0.01] [--rounds 10]
+ *            [--opponents sample.Crazy,...] [--seed 1] [--workers N] [--home .] [--work-dir dir]
+ *            [--out dir]
+ *        population is the number of perturbed bots per generation (even: +eps and -eps)
+ */
+public class EvolutionTrainer {
+
+    public static final String STATE_FILE = "es_state.properties";
+    public static final String CHECKPOINT_DIR = "checkpoints";
+    public static final String BEST_FILE = "best.bin";
+    // Most evaluations a challenger needs to replace the best, however often the best was evaluated
+    public static final int CONFIRM_EVALUATIONS = 4;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File home = new File(".");
+        File init = null;
+        boolean resume = false;
+        int generations = 20;
+        int population = 8;
+        double sigma = 0.02;
+        double lr = 0.01;
+        int rounds = 10;
+        String opponentList = BattleEvaluator.DEFAULT_OPPONENTS;
+        long seed = 1;
+        int workers = Runtime.getRuntime().availableProcessors();
+        File workDir = new File(System.getProperty("java.io.tmpdir"), "evolution");
+        File outDir = new File(".");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--resume")) {
+                resume = true;
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+            String value = args[++i];
+            if (args[i - 1].equals("--init")) init = new File(value);
+            else if (args[i - 1].equals("--generations")) generations = Integer.parseInt(value);
+            else if (args[i - 1].equals("--population")) population = Integer.parseInt(value);
+            else if (args[i - 1].equals("--sigma")) sigma = Double.parseDouble(value);
+            else if (args[i - 1].equals("--lr")) lr = Double.parseDouble(value);
+            else if (args[i - 1].equals("--rounds")) rounds = Integer.parseInt(value);
+            else if (args[i - 1].equals("--opponents")) opponentList = value;
+            else if (args[i - 1].equals("--seed")) seed = Long.parseLong(value);
+            else if (args[i - 1].equals("--workers")) workers = Integer.parseInt(value);
+            else if (args[i - 1].equals("--home")) home = new File(value);
+            else if (args[i - 1].equals("--work-dir")) workDir = new File(value);
+            else if (args[i - 1].equals("--out")) outDir = new File(value);
+            else throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+        }
+        if (population < 2 || population % 2 != 0) {
+            throw new IllegalArgumentException("Population must be even and at least 2: " + population);
+        }
+        if (init == null) init = new File(home, "robots/mybots/NeuralNetBot.data/" + NeuralModel.TEXT_FILE);
+        String[] opponents = opponentList.split(",");
+        for (int o = 0; o < opponents.length; o++) opponents[o] = opponents[o].trim();
+
+        // Where to start: the last checkpoint, or the imitation weights
+        File stateFile = new File(outDir, STATE_FILE);
+        File checkpoints = new File(outDir, CHECKPOINT_DIR);
+        Properties state = new Properties();
+        NeuralModel start;
+        int firstGeneration = 1;
+        double[] bestTheta = null;
+        double bestSum = 0;
+        int bestEvaluations = 0;
+        if (resume) {
+            if (!stateFile.exists()) {
+                throw new IOException("Nothing to resume: " + stateFile + " does not exist (run without --resume to start over)");
+            }
+            InputStream in = new FileInputStream(stateFile);
+            try {
+                state.load(in);
+            } finally {
+                in.close();
+            }
+            int done = Integer.parseInt(state.getProperty("generation"));
+            start = NeuralModel.readBinary(checkpointFile(checkpoints, done));
+            firstGeneration = done + 1;
+            bestEvaluations = Integer.parseInt(state.getProperty("best_evaluations", "0"));
+            if (bestEvaluations > 0) {
+                bestTheta = NeuralModel.readBinary(new File(checkpoints, BEST_FILE)).params;
+                bestSum = Double.parseDouble(state.getProperty("best_fitness")) * bestEvaluations;
+            }
+            System.out.println("Resuming after generation " + done + (bestEvaluations > 0 ? " (best mean fitness "
+                    + String.format(Locale.ROOT, "%.4f over %d evaluations", bestSum / bestEvaluations, bestEvaluations)
+                    + ")" : ""));
+        } else {
+            start = MlpTrainer.readModel(init);
+            System.out.println("Starting from " + init + " (" + NeuralModel.describe(start.sizes, start.activations) + ")");
+        }
+        checkpoints.mkdirs();
+        File members = new File(workDir, "members");
+        members.mkdirs();
+
+        double[] theta = start.params.clone();
+        int n = theta.length;
+        int pairs = population / 2;
+        BattleEvaluator.Pool pool = new BattleEvaluator.Pool(home, new File(workDir, "workers"), opponents,
+                Math.min(workers, (population + 2) * opponents.length));
+        System.out.println(population + " perturbed bots + 1 unperturbed + the best so far per generation, " + n + " parameters, vs "
+                + opponents.length + " opponents x " + rounds + " rounds, on " + pool.size() + " workers");
+
+        try {
+            for (int gen = firstGeneration; gen < firstGeneration + generations; gen++) {
+                long t0 = System.nanoTime();
+                // The noise only depends on seed and generation, so a resumed run samples what a straight run would
+                Random rnd = new Random(seed * 1000003L + gen);
+                double[][] eps = new double[pairs][n];
+                for (double[] e : eps) {
+                    for (int j = 0; j < n; j++) e[j] = rnd.nextGaussian();
+                }
+
+                // Member 0 is theta itself, then theta + sigma*eps_k and theta - sigma*eps_k
+                List<BattleEvaluator.Candidate> candidates = new ArrayList<BattleEvaluator.Candidate>();
+                candidates.add(member(start, theta, members, 0, opponents.length));
+                for (int k = 0; k < pairs; k++) {
+                    double[] plus = new double[n];
+                    double[] minus = new double[n];
+                    for (int j = 0; j < n; j++) {
+                        plus[j] = theta[j] + sigma * eps[k][j];
+                        minus[j] = theta[j] - sigma * eps[k][j];
+                    }
+                    candidates.add(member(start, plus, members, 2 * k + 1, opponents.length));
+                    candidates.add(member(start, minus, members, 2 * k + 2, opponents.length));
+                }
+                // Last, the best so far fights again, so its fitness is a mean and not one lucky draw
+                if (bestTheta != null) candidates.add(member(start, bestTheta, members, population + 1, opponents.length));
+                pool.run(candidates, rounds, false);
+
+                double[] fitness = new double[population];
+                for (int i = 0; i < population; i++) fitness[i] = candidates.get(i + 1).scoreShare();
+                double center = candidates.get(0).scoreShare();
+                if (bestTheta != null) {
+                    bestSum += candidates.get(population + 1).scoreShare();
+                    bestEvaluations++;
+                }
+                boolean replace = false;
+                double challengerSum = center;
+                int challengerEvaluations = 1;
+                if (bestTheta != null && center > bestSum / bestEvaluations) {
+                    // One draw is not enough: evaluate theta as often as the best before comparing means
+                    int needed = Math.min(bestEvaluations, CONFIRM_EVALUATIONS);
+                    List<BattleEvaluator.Candidate> repeats = new ArrayList<BattleEvaluator.Candidate>();
+                    for (int r = 1; r < needed; r++) {
+                        repeats.add(member(start, theta, members, population + 1 + r, opponents.length));
+                    }
+                    pool.run(repeats, rounds, false);
+                    double sum = center;
+                    for (BattleEvaluator.Candidate c : repeats) sum += c.scoreShare();
+                    System.out.println(String.format(Locale.ROOT,
+                            "Generation %d - unperturbed %.4f beat the best's mean %.4f once, %.4f over %d evaluations",
+                            gen, center, bestSum / bestEvaluations, sum / needed, needed));
+                    if (sum / needed > bestSum / bestEvaluations) {
+                        replace = true;
+                        challengerSum = sum;
+                        challengerEvaluations = needed;
+                    }
+                }
+                if (bestTheta == null || replace) {
+                    bestTheta = theta.clone();
+                    bestSum = challengerSum;
+                    bestEvaluations = challengerEvaluations;
+                    state.setProperty("best_generation", Integer.toString(gen));
+                    MlpTrainer.writeModel(withParams(start, theta), outDir);
+                    writeBinary(withParams(start, theta), new File(checkpoints, BEST_FILE));
+                }
+                double best = bestSum / bestEvaluations;
+
+                // theta += lr / (population * sigma) * sum_k (rank+ - rank-) * eps_k
+                double[] rank = centeredRanks(fitness);
+                double scale = lr / (population * sigma);
+                for (int k = 0; k < pairs; k++) {
+                    double w = (rank[2 * k] - rank[2 * k + 1]) * scale;
+                    for (int j = 0; j < n; j++) theta[j] += w * eps[k][j];
+                }
+
+                // Checkpoint the updated weights before anything else can go wrong
+                writeBinary(withParams(start, theta), checkpointFile(checkpoints, gen));
+                state.setProperty("generation", Integer.toString(gen));
+                state.setProperty("best_fitness", Double.toString(best));
+                state.setProperty("best_evaluations", Integer.toString(bestEvaluations));
+                state.setProperty("last_center_fitness", Double.toString(center));
+                state.setProperty("sigma", Double.toString(sigma));
+                state.setProperty("lr", Double.toString(lr));
+                state.setProperty("seed", Long.toString(seed));
+                OutputStream out = new FileOutputStream(stateFile);
+                try {
+                    state.store(out, "EvolutionTrainer state");
+                } finally {
+                    out.close();
+                }
+
+                double[] sorted = fitness.clone();
+                Arrays.sort(sorted);
+                double mean = 0;
+                for (double f : fitness) mean += f;
+                System.out.println(String.format(Locale.ROOT,
+                        "Generation %d - unperturbed %.4f (%d/%d rounds won) - population mean %.4f, best %.4f"
+                                + " - best so far %.4f (mean of %d, generation %s) (%d s)",
+                        gen, center, candidates.get(0).wins(), rounds * opponents.length, mean / population,
+                        sorted[population - 1], best, bestEvaluations, state.getProperty("best_generation"),
+                        (System.nanoTime() - t0) / 1000000000L));
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static BattleEvaluator.Candidate member(NeuralModel start, double[] params, File dir, int index, int opponents)
+            throws IOException {
+        File file = new File(dir, "member_" + index + ".bin");
+        writeBinary(withParams(start, params), file);
+        return new BattleEvaluator.Candidate(file, opponents);
+    }
+
+    private static NeuralModel withParams(NeuralModel m, double[] params) {
+        return new NeuralModel(m.inputMean, m.inputStd, m.outputMean, m.outputStd, m.sizes, m.activations,
+                params.clone(), m.features);
+    }
+
+    private static File checkpointFile(File dir, int generation) {
+        return new File(dir, String.format(Locale.ROOT, "checkpoint_g%04d.bin", generation));
+    }
+
+    private static void writeBinary(NeuralModel model, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            model.writeBinary(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Fitness replaced by its rank, scaled to [-0.5, 0.5] - the update ignores outliers and the
+     * fitness scale. Ties share their mean rank.
+     */
+    static double[] centeredRanks(double[] fitness) {
+        int n = fitness.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        final double[] f = fitness;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(f[a], f[b]);
+            }
+        });
+        double[] ranks = new double[n];
+        for (int i = 0; i < n; ) {
+            int j = i;
+            while (j + 1 < n && fitness[order[j + 1]] == fitness[order[i]]) j++;
+            double r = (i + j) / 2.0;
+            for (int k = i; k <= j; k++) ranks[order[k]] = n == 1 ? 0 : r / (n - 1) - 0.5;
+            i = j + 1;
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,226 @@
+package mybots;
+
+import robocode.AdvancedRobot;
+import robocode.ScannedRobotEvent;
+import robocode.util.Utils;
+
+/**
+ * FeatureExtractor
+ * Turns a ScannedRobotEvent plus our own robot state into the NN input vector.
+ * DataCollectorBot logs exactly this vector and NeuralNetBot feeds exactly this vector to the
+ * network, so what the net was trained on and what it sees in battle can never drift apart.
+ *
+ * Which features are used (and in what order) is configurable - see Feature.
+ * extract() writes into one reused double[] and never allocates.
+ */
+public class FeatureExtractor {
+
+    /**
+     * Every feature we know how to compute. The name is the dataset column name.
+     */
+    public enum Feature {
+        ENEMY_DISTANCE("enemy_distance"),
+        ENEMY_BEARING("enemy_bearing"),          // relative to our heading, degrees
+        ENEMY_VELOCITY("enemy_velocity"),
+        MY_ENERGY("my_energy"),
+        ENEMY_ENERGY("enemy_energy"),
+        WALL_DISTANCE("wall_distance"),
+        WALL_BEARING("wall_bearing"),            // relative to our heading, degrees
+        ENEMY_HEADING("enemy_heading"),          // enemy heading relative to the line from us to it, degrees
+        LATERAL_VELOCITY("lateral_velocity"),    // enemy velocity across our line of sight
+        ADVANCING_VELOCITY("advancing_velocity"),// enemy velocity towards us (negative = moving away)
+        GUN_HEAT("gun_heat"),
+        TIME_SINCE_SCAN("time_since_scan"),      // ticks since we last scanned this same opponent this round
+        MY_VELOCITY("my_velocity");
+
+        public final String column;
+
+        Feature(String column) {
+            this.column = column;
+        }
+
+        public static Feature fromColumn(String column) {
+            for (Feature f : values()) {
+                if (f.column.equals(column.trim())) return f;
+            }
+            throw new IllegalArgumentException("Unknown feature: " + column);
+        }
+    }
+
+    /**
+     * The original 7 inputs, in the order the old datasets and weight files use
+     */
+    public static final Feature[] LEGACY = {
+        Feature.ENEMY_DISTANCE, Feature.ENEMY_BEARING, Feature.ENEMY_VELOCITY, Feature.MY_ENERGY,
+        Feature.ENEMY_ENERGY, Feature.WALL_DISTANCE, Feature.WALL_BEARING
+    };
+
+    /**
+     * The legacy inputs plus the derived kinematics
+     */
+    public static final Feature[] ENRICHED = {
+        Feature.ENEMY_DISTANCE, Feature.ENEMY_BEARING, Feature.ENEMY_VELOCITY, Feature.MY_ENERGY,
+        Feature.ENEMY_ENERGY, Feature.WALL_DISTANCE, Feature.WALL_BEARING, Feature.ENEMY_HEADING,
+        Feature.LATERAL_VELOCITY, Feature.ADVANCING_VELOCITY, Feature.GUN_HEAT, Feature.TIME_SINCE_SCAN,
+        Feature.MY_VELOCITY
+    };
+
+    private final Feature[] features;
+    private final double[] values;
+
+    // Per-opponent state, so melee scans of different robots do not mix
+    private final OpponentTable opponents = new OpponentTable();
+    private int lastOpponent = -1;
+
+    public FeatureExtractor(Feature[] features) {
+        this.features = features.clone();
+        this.values = new double[features.length];
+    }
+
+    /**
+     * Build from a comma separated list of column names, or "legacy" / "enriched"
+     */
+    public static FeatureExtractor parse(String spec) {
+        if (spec == null || spec.trim().isEmpty() || spec.trim().equalsIgnoreCase("legacy")) {
+            return new FeatureExtractor(LEGACY);
+        }
+        if (spec.trim().equalsIgnoreCase("enriched")) {
+            return new FeatureExtractor(ENRICHED);
+        }
+        String[] names = spec.split(",");
+        Feature[] list = new Feature[names.length];
+        for (int i = 0; i < names.length; i++) {
+            list[i] = Feature.fromColumn(names[i]);
+        }
+        return new FeatureExtractor(list);
+    }
+
+    /**
+     * Forget per-round state. Call at the start of every round (the clock restarts at 0).
+     */
+    public void reset() {
+        opponents.resetRound();
+        lastOpponent = -1;
+    }
+
+    /**
+     * Compute every configured feature for this scan
+     * @return the shared feature vector - valid until the next call
+     */
+    public double[] extract(AdvancedRobot robot, ScannedRobotEvent e) {
+        long now = robot.getTime();
+        int opponent = opponents.idOf(e.getName());
+        long lastScanTime = opponents.lastScanTime(opponent);
+        double absBearing = robot.getHeading() + e.getBearing();
+        // Angle between the enemy's heading and the line from us to it
+        double enemyHeading = Utils.normalRelativeAngleDegrees(e.getHeading() - absBearing);
+        double headingRad = Math.toRadians(enemyHeading);
+
+        for (int i = 0; i < features.length; i++) {
+            double v;
+            switch (features[i]) {
+                case ENEMY_DISTANCE:     v = e.getDistance(); break;
+                case ENEMY_BEARING:      v = e.getBearing(); break;
+                case ENEMY_VELOCITY:     v = e.getVelocity(); break;
+                case MY_ENERGY:          v = robot.getEnergy(); break;
+                case ENEMY_ENERGY:       v = e.getEnergy(); break;
+                case WALL_DISTANCE:      v = getDistanceToNearestWall(robot); break;
+                case WALL_BEARING:       v = getBearingToNearestWall(robot); break;
+                case ENEMY_HEADING:      v = enemyHeading; break;
+                case LATERAL_VELOCITY:   v = e.getVelocity() * Math.sin(headingRad); break;
+                case ADVANCING_VELOCITY: v = -e.getVelocity() * Math.cos(headingRad); break;
+                case GUN_HEAT:           v = robot.getGunHeat(); break;
+                case TIME_SINCE_SCAN:    v = lastScanTime < 0 ? now : now - lastScanTime; break;
+                case MY_VELOCITY:        v = robot.getVelocity(); break;
+                default:                 v = 0; break;
+            }
+            values[i] = v;
+        }
+        opponents.setLastScanTime(opponent, now);
+        lastOpponent = opponent;
+        return values;
+    }
+
+    /**
+     * Id (see OpponentTable) of the robot in the last extract() call
+     */
+    public int lastOpponentId() {
+        return lastOpponent;
+    }
+
+    public OpponentTable opponents() {
+        return opponents;
+    }
+
+    public int size() {
+        return features.length;
+    }
+
+    public Feature[] features() {
+        return features.clone();
+    }
+
+    /**
+     * Dataset column names, in order
+     */
+    public String[] columnNames() {
+        String[] names = new String[features.length];
+        for (int i = 0; i < features.length; i++) {
+            names[i] = features[i].column;
+        }
+        return names;
+    }
+
+    /**
+     * Calculate distance to the nearest wall
+     */
+    public static double getDistanceToNearestWall(AdvancedRobot robot) {
+        double x = robot.getX();
+        double y = robot.getY();
+        double width = robot.getBattleFieldWidth();
+        double height = robot.getBattleFieldHeight();
+
+        // Distance to each wall
+        double distLeft = x;
+        double distRight = width - x;
+        double distBottom = y;
+        double distTop = height - y;
+
+        // Return minimum distance
+        return Math.min(Math.min(distLeft, distRight), Math.min(distBottom, distTop));
+    }
+
+    /**
+     * Calculate bearing to the nearest wall (relative to current heading)
+     */
+    public static double getBearingToNearestWall(AdvancedRobot robot) {
+        double x = robot.getX();
+        double y = robot.getY();
+        double width = robot.getBattleFieldWidth();
+        double height = robot.getBattleFieldHeight();
+
+        // Distance to each wall
+        double distLeft = x;
+        double distRight = width - x;
+        double distBottom = y;
+        double distTop = height - y;
+
+        // Find which wall is nearest
+        double minDist = Math.min(Math.min(distLeft, distRight), Math.min(distBottom, distTop));
+
+        // Calculate absolute bearing to nearest wall
+        double absBearing;
+        if (minDist == distLeft) {
+            absBearing = 270;  // West
+        } else if (minDist == distRight) {
+            absBearing = 90;   // East
+        } else if (minDist == distBottom) {
+            absBearing = 180;  // South
+        } else {
+            absBearing = 0;    // North
+        }
+
+        // Convert to relative bearing
+        return Utils.normalRelativeAngleDegrees(absBearing - robot.getHeading());
+    }
+}
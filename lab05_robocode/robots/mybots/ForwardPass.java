@@ -0,0 +1,24 @@
+package mybots;
+
+/**
+ * ForwardPass
+ * A network that can be evaluated in place: fill input(), call forward(), read the returned
+ * buffer. Implementations preallocate everything, so a forward pass never allocates.
+ */
+public interface ForwardPass {
+
+    /**
+     * The input buffer - fill it, then call forward()
+     */
+    double[] input();
+
+    /**
+     * Run the network on whatever is in input()
+     * @return the output buffer - valid until the next forward()
+     */
+    double[] forward();
+
+    int inputSize();
+
+    int outputSize();
+}
@@ -0,0 +1,235 @@
+package mybots;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * HyperparameterSweep
+ * Trains every combination of hidden layers, learning rate and feature set at once and ranks
+ * them by validation loss. The dataset is loaded once, and each feature set is normalized once
+ * into a TrainingSet that all of its candidates read - nothing writes to it while training,
+ * so one copy is shared by every thread.
+ *
+ * Each candidate is one single-threaded MlpTrainer (seeded by its index, so results do not
+ * depend on scheduling) run as a task on a ForkJoinPool sized to the machine. The tasks are
+ * submitted one by one from outside the pool, biggest networks first; external submissions are
+ * taken in FIFO order, so the small ones fill the gaps at the end. (invokeAll() from inside
+ * the pool would not: it forks the list from the back, and idle workers steal the last-forked
+ * - the cheapest - first.)
+ * A candidate keeps the weights of its best epoch, like early stopping.
+ *
+ * Writes sweep_leaderboard.csv (best first) and the winner as neural_weights.txt / .bin.
+ *
+ * Usage: java -cp robots;libs/robocode.jar mybots.HyperparameterSweep <dataset or manifest>
+ *            [--hidden "20:relu,20:relu;32:relu;64:relu,32:relu"] [--lr 0.001,0.003]
+ *            [--features "legacy;enriched"] [--output linear] [--epochs 100] [--batch 32]
+ *            [--validation 0.2] [--seed 1] [--threads N] [--out dir]
+ *        hidden layer lists and feature sets are separated by ';'
+ */
+public class HyperparameterSweep {
+
+    public static final String LEADERBOARD_FILE = "sweep_leaderboard.csv";
+
+    /**
+     * One point of the grid and, once trained, how it did
+     */
+    static final class Candidate extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+        final String features;
+        final String hidden;
+        final double learningRate;
+        final TrainingSet data;
+        final int[] sizes;
+        final Activation[] activations;
+        final int epochs;
+        final int batchSize;
+        final long seed;
+
+        double bestLoss = Double.POSITIVE_INFINITY;
+        double trainLoss;
+        int bestEpoch;
+        double[] bestParams;
+        long millis;
+
+        Candidate(int index, String features, String hidden, String output, double learningRate, TrainingSet data,
+                  int epochs, int batchSize, long seed) {
+            this.index = index;
+            this.features = features;
+            this.hidden = hidden;
+            this.learningRate = learningRate;
+            this.data = data;
+            this.sizes = MlpTrainer.layerSizes(data.inputs, hidden, data.outputs);
+            this.activations = MlpTrainer.layerActivations(hidden, output);
+            this.epochs = epochs;
+            this.batchSize = batchSize;
+            this.seed = seed;
+        }
+
+        protected void compute() {
+            long t0 = System.nanoTime();
+            Random rnd = new Random(seed);
+            MlpTrainer trainer = new MlpTrainer(sizes, activations, rnd, null);
+            trainer.setLearningRate(learningRate);
+            for (int e = 1; e <= epochs; e++) {
+                double loss = trainer.trainEpoch(data, batchSize, rnd);
+                double valLoss = data.validationRows() > 0 ? trainer.validationLoss(data) : loss;
+                if (valLoss < bestLoss) {
+                    bestLoss = valLoss;
+                    trainLoss = loss;
+                    bestEpoch = e;
+                    bestParams = trainer.params().clone();
+                }
+            }
+            millis = (System.nanoTime() - t0) / 1000000;
+            report(this);
+        }
+
+        long cost() {
+            return (long) InferenceEngine.packedSize(sizes) * epochs;
+        }
+
+        NeuralModel toModel() {
+            return new NeuralModel(data.inputMean, data.inputStd, data.outputMean, data.outputStd,
+                    sizes.clone(), activations.clone(), bestParams.clone(), data.featureSpec());
+        }
+
+        String describe() {
+            return NeuralModel.describe(sizes, activations) + " lr " + learningRate + " features " + features;
+        }
+    }
+
+    private static int finished = 0;
+    private static int total = 0;
+
+    private static synchronized void report(Candidate c) {
+        finished++;
+        System.out.println(String.format(Locale.ROOT, "[%d/%d] %s: val_loss %.4f at epoch %d (%d ms)",
+                finished, total, c.describe(), c.bestLoss, c.bestEpoch, c.millis));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.HyperparameterSweep <dataset or manifest>"
+                    + " [--hidden \"20:relu,20:relu;32:relu\"] [--lr 0.001,0.003] [--features \"legacy;enriched\"]"
+                    + " [--output linear] [--epochs 100] [--batch 32] [--validation 0.2] [--seed 1] [--threads N] [--out dir]");
+            return;
+        }
+        String hidden = "20:relu,20:relu;32:relu;64:relu,32:relu";
+        String rates = "0.001,0.003";
+        String featureSets = "legacy;enriched";
+        String output = "linear";
+        int epochs = 100;
+        int batch = 32;
+        double validation = 0.2;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File outDir = new File(".");
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("--hidden")) hidden = value;
+            else if (args[i].equals("--lr")) rates = value;
+            else if (args[i].equals("--features")) featureSets = value;
+            else if (args[i].equals("--output")) output = value;
+            else if (args[i].equals("--epochs")) epochs = Integer.parseInt(value);
+            else if (args[i].equals("--batch")) batch = Integer.parseInt(value);
+            else if (args[i].equals("--validation")) validation = Double.parseDouble(value);
+            else if (args[i].equals("--seed")) seed = Long.parseLong(value);
+            else if (args[i].equals("--threads")) threads = Integer.parseInt(value);
+            else if (args[i].equals("--out")) outDir = new File(value);
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        Dataset dataset = DatasetLoader.load(new File(args[0]));
+        System.out.println("Loaded " + dataset.rows + " rows of battle data");
+
+        // One shared, read-only TrainingSet per feature set
+        Map<String, TrainingSet> sets = new LinkedHashMap<String, TrainingSet>();
+        for (String spec : featureSets.split(";")) {
+            spec = spec.trim();
+            if (spec.isEmpty()) continue;
+            try {
+                sets.put(spec, TrainingSet.withFeatures(dataset, validation, spec));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Skipping feature set " + spec + ": " + e.getMessage());
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (Map.Entry<String, TrainingSet> set : sets.entrySet()) {
+            for (String h : hidden.split(";")) {
+                for (String lr : rates.split(",")) {
+                    int index = candidates.size();
+                    candidates.add(new Candidate(index, set.getKey(), h.trim(), output, Double.parseDouble(lr.trim()),
+                            set.getValue(), epochs, batch, seed + index));
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            System.out.println("Nothing to train");
+            return;
+        }
+        total = candidates.size();
+        System.out.println("Training " + total + " candidates on " + threads + " threads");
+
+        List<Candidate> queue = new ArrayList<Candidate>(candidates);
+        Collections.sort(queue, new Comparator<Candidate>() {
+            public int compare(Candidate a, Candidate b) {
+                return Long.compare(b.cost(), a.cost());
+            }
+        });
+        long t0 = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Candidate c : queue) pool.execute(c);
+            for (Candidate c : queue) c.join();
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("Sweep took " + (System.nanoTime() - t0) / 1000000 + " ms");
+
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            public int compare(Candidate a, Candidate b) {
+                int c = Double.compare(a.bestLoss, b.bestLoss);
+                return c != 0 ? c : Integer.compare(a.index, b.index);
+            }
+        });
+        File leaderboard = new File(outDir, LEADERBOARD_FILE);
+        writeLeaderboard(candidates, leaderboard);
+        System.out.println();
+        for (int r = 0; r < Math.min(5, candidates.size()); r++) {
+            Candidate c = candidates.get(r);
+            System.out.println(String.format(Locale.ROOT, "%d. val_loss %.4f  %s", r + 1, c.bestLoss, c.describe()));
+        }
+        System.out.println("Wrote " + leaderboard);
+        MlpTrainer.writeModel(candidates.get(0).toModel(), outDir);
+    }
+
+    private static void writeLeaderboard(List<Candidate> ranked, File file) throws IOException {
+        PrintWriter pw = new PrintWriter(file, "UTF-8");
+        try {
+            pw.println("rank,val_loss,train_loss,best_epoch,layers,learning_rate,features,params,ms");
+            for (int r = 0; r < ranked.size(); r++) {
+                Candidate c = ranked.get(r);
+                pw.println(String.format(Locale.ROOT, "%d,%.6f,%.6f,%d,%s,%s,\"%s\",%d,%d",
+                        r + 1, c.bestLoss, c.trainLoss, c.bestEpoch, NeuralModel.describe(c.sizes, c.activations),
+                        c.learningRate, c.features, InferenceEngine.packedSize(c.sizes), c.millis));
+            }
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) throw new IOException("Could not write " + file);
+    }
+}
@@ -0,0 +1,179 @@
+package mybots;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * InferenceBenchmark
+ * Offline micro-benchmark: ns per forward pass of InferenceEngine against the original
+ * NeuralNetBot code (jagged [in][out] arrays, a new double[] per layer).
+ * Each variant is warmed up first so the JIT has compiled it, then timed over several
+ * measurement rounds; the best and median rounds are reported, plus the bytes allocated per
+ * call (HotSpot only) - garbage made in onScannedRobot is what eventually costs a skipped turn.
+ *
+ * Usage: java -cp robots mybots.InferenceBenchmark [neural_weights.txt | neural_weights.bin]
+ *        java -cp robots mybots.InferenceBenchmark --shape 7,64,64,64,3
+ *        (without arguments, random weights with the default 7-20-20-3 shape are used)
+ */
+public class InferenceBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURE_ROUNDS = 30;
+    // Roughly the same work per round whatever the network size
+    private static final long PARAMS_PER_ROUND = 130000000L;
+
+    private static int callsPerRound;
+
+    // Consumed result, so the JIT cannot drop the work
+    private static double sink;
+
+    public static void main(String[] args) throws IOException {
+        NeuralModel model;
+        if (args.length > 1 && args[0].equals("--shape")) {
+            model = randomModel(args[1]);
+            System.out.println("Weights: random " + NeuralModel.describe(model.sizes, model.activations));
+        } else if (args.length > 0) {
+            File file = new File(args[0]);
+            model = ModelCache.get(file).model();
+            if (model == null) throw new IOException("Benchmark a float model (.txt or .bin), not " + file);
+            System.out.println("Weights: " + file + " " + NeuralModel.describe(model.sizes, model.activations));
+        } else {
+            model = randomModel("7,20,20,3");
+            System.out.println("Weights: random " + NeuralModel.describe(model.sizes, model.activations));
+        }
+
+        final InferenceEngine engine = model.newEngine();
+        final Activation[] acts = model.activations;
+        // Unpack to the old jagged Keras layout [in][out]
+        final double[][][] fw = new double[acts.length][][];
+        final double[][] fb = new double[acts.length][];
+        for (int l = 0; l < acts.length; l++) {
+            int in = model.sizes[l];
+            int out = model.sizes[l + 1];
+            fw[l] = new double[in][out];
+            fb[l] = Arrays.copyOfRange(model.params, engine.biasOffset(l), engine.biasOffset(l) + out);
+            for (int o = 0; o < out; o++) {
+                for (int i = 0; i < in; i++) fw[l][i][o] = model.params[engine.weightOffset(l) + o * in + i];
+            }
+        }
+
+        // A pool of inputs so the branch predictor does not learn one fixed path
+        Random rnd = new Random(7);
+        callsPerRound = (int) Math.max(1000, PARAMS_PER_ROUND / model.params.length);
+        final double[][] inputs = new double[1024][engine.inputSize()];
+        for (double[] in : inputs) {
+            for (int i = 0; i < in.length; i++) in[i] = rnd.nextGaussian();
+        }
+
+        // Both must agree before timing anything
+        double maxDiff = 0;
+        for (double[] in : inputs) {
+            double[] a = legacyForward(in, fw, fb, acts);
+            double[] e = engine.forward(in);
+            for (int i = 0; i < a.length; i++) maxDiff = Math.max(maxDiff, Math.abs(a[i] - e[i]));
+        }
+        System.out.println("max |legacy - engine| = " + maxDiff);
+
+        Runnable legacy = new Runnable() {
+            public void run() {
+                double acc = 0;
+                for (int n = 0; n < callsPerRound; n++) {
+                    acc += legacyForward(inputs[n & 1023], fw, fb, acts)[0];
+                }
+                sink += acc;
+            }
+        };
+        Runnable flat = new Runnable() {
+            public void run() {
+                double acc = 0;
+                for (int n = 0; n < callsPerRound; n++) {
+                    acc += engine.forward(inputs[n & 1023])[0];
+                }
+                sink += acc;
+            }
+        };
+
+        report("InferenceEngine", flat);
+        report("legacy denseLayer", legacy);
+        if (sink == 42) System.out.println();
+    }
+
+    private static void report(String name, Runnable body) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) body.run();
+        double[] ns = new double[MEASURE_ROUNDS];
+        for (int r = 0; r < MEASURE_ROUNDS; r++) {
+            long t0 = System.nanoTime();
+            body.run();
+            ns[r] = (System.nanoTime() - t0) / (double) callsPerRound;
+        }
+        long before = allocatedBytes();
+        body.run();
+        long allocated = allocatedBytes() - before;
+
+        Arrays.sort(ns);
+        System.out.println(String.format(Locale.ROOT, "%-20s best %7.1f ns/op   median %7.1f ns/op   %s",
+                name, ns[0], ns[MEASURE_ROUNDS / 2],
+                before < 0 ? "" : String.format(Locale.ROOT, "%.1f B/op", allocated / (double) callsPerRound)));
+    }
+
+    /**
+     * Bytes allocated by this thread so far, or -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // --- The forward pass exactly as NeuralNetBot used to do it ---
+
+    private static double[] legacyForward(double[] inputs, double[][][] w, double[][] b, Activation[] acts) {
+        double[] h = inputs;
+        for (int l = 0; l < w.length; l++) {
+            h = denseLayer(h, w[l], b[l], acts[l]);
+        }
+        return h;
+    }
+
+    private static double[] denseLayer(double[] input, double[][] weights, double[] biases, Activation act) {
+        double[] output = new double[biases.length];
+        for (int i = 0; i < output.length; i++) {
+            double sum = 0;
+            for (int j = 0; j < input.length; j++) {
+                sum += input[j] * weights[j][i];
+            }
+            sum += biases[i];
+            output[i] = act == Activation.RELU ? Math.max(0, sum) : act.apply(sum);
+        }
+        return output;
+    }
+
+    /**
+     * Random weights for a shape like "7,64,64,3" (ReLU hidden layers, linear output)
+     */
+    private static NeuralModel randomModel(String shape) {
+        String[] parts = shape.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) sizes[i] = Integer.parseInt(parts[i].trim());
+        Activation[] acts = new Activation[sizes.length - 1];
+        for (int l = 0; l < acts.length; l++) acts[l] = l == acts.length - 1 ? Activation.LINEAR : Activation.RELU;
+
+        Random rnd = new Random(42);
+        double[] params = new double[InferenceEngine.packedSize(sizes)];
+        for (int i = 0; i < params.length; i++) params[i] = rnd.nextGaussian() * 0.3;
+        double[] zeros = new double[sizes[0]];
+        double[] ones = new double[sizes[0]];
+        Arrays.fill(ones, 1);
+        double[] outZeros = new double[sizes[sizes.length - 1]];
+        double[] outOnes = new double[sizes[sizes.length - 1]];
+        Arrays.fill(outOnes, 1);
+        return new NeuralModel(zeros, ones, outZeros, outOnes, sizes, acts, params, "legacy");
+    }
+}
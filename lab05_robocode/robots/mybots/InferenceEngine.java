@@ -0,0 +1,190 @@
+package mybots;
+
+/**
+ * InferenceEngine
+ * Forward pass of a dense (fully connected) network without any allocation.
+ *
+ * Every layer's weights and biases are packed into one contiguous double[]. Weights are stored
+ * row-major by output neuron ([out][in]), so each output is a dot product over consecutive
+ * memory instead of striding down a column of a jagged double[][]. The activations of every
+ * layer live in buffers allocated once in the constructor and reused by every forward().
+ *
+ * The matrix-vector products run on a DenseKernel - the SIMD one when the JVM supports it.
+ *
+ * Not thread safe - one engine per robot.
+ */
+public class InferenceEngine implements ForwardPass {
+
+    private final int[] sizes;          // sizes[0] = inputs, sizes[l + 1] = outputs of layer l
+    private final Activation[] activations;
+    private final boolean[] relu;       // activations[l] == RELU, fused into the kernel pass
+    private final double[] params;      // all weights and biases, layer after layer
+    private final int[] weightOffset;   // where layer l's [out][in] weights start in params
+    private final int[] biasOffset;     // where layer l's biases start in params
+    private final double[][] buffers;   // buffers[0] = input, buffers[l + 1] = output of layer l
+    private final DenseKernel kernel;
+
+    // Picked once per JVM
+    private static DenseKernel defaultKernel;
+
+    /**
+     * The kernel new engines use unless told otherwise
+     */
+    public static synchronized DenseKernel defaultKernel() {
+        if (defaultKernel == null) defaultKernel = DenseKernel.select("auto");
+        return defaultKernel;
+    }
+
+    /**
+     * @param sizes       layer widths, inputs first: e.g. {7, 20, 20, 3}
+     * @param activations one per layer (sizes.length - 1)
+     * @param params      packed parameters in the layout described by packedSize()
+     */
+    public InferenceEngine(int[] sizes, Activation[] activations, double[] params) {
+        this(sizes, activations, params, defaultKernel());
+    }
+
+    public InferenceEngine(int[] sizes, Activation[] activations, double[] params, DenseKernel kernel) {
+        if (activations.length != sizes.length - 1) {
+            throw new IllegalArgumentException("Need one activation per layer");
+        }
+        if (params.length != packedSize(sizes)) {
+            throw new IllegalArgumentException("Expected " + packedSize(sizes) + " parameters, got " + params.length);
+        }
+        this.sizes = sizes.clone();
+        this.activations = activations.clone();
+        this.params = params;
+        this.kernel = kernel;
+
+        relu = new boolean[activations.length];
+        for (int l = 0; l < activations.length; l++) {
+            relu[l] = activations[l] == Activation.RELU;
+        }
+
+        int layers = sizes.length - 1;
+        weightOffset = new int[layers];
+        biasOffset = new int[layers];
+        int pos = 0;
+        for (int l = 0; l < layers; l++) {
+            weightOffset[l] = pos;
+            pos += sizes[l] * sizes[l + 1];
+            biasOffset[l] = pos;
+            pos += sizes[l + 1];
+        }
+
+        buffers = new double[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            buffers[i] = new double[sizes[i]];
+        }
+    }
+
+    /**
+     * Number of doubles needed to pack a network with these layer widths
+     */
+    public static int packedSize(int[] sizes) {
+        int n = 0;
+        for (int l = 0; l + 1 < sizes.length; l++) {
+            n += sizes[l] * sizes[l + 1] + sizes[l + 1];
+        }
+        return n;
+    }
+
+    /**
+     * Pack Keras style layers (weights[l][in][out], biases[l][out]) into the engine layout
+     */
+    public static InferenceEngine fromKeras(double[][][] weights, double[][] biases, Activation[] activations) {
+        int layers = weights.length;
+        int[] sizes = new int[layers + 1];
+        sizes[0] = weights[0].length;
+        for (int l = 0; l < layers; l++) {
+            sizes[l + 1] = biases[l].length;
+        }
+
+        double[] params = new double[packedSize(sizes)];
+        int pos = 0;
+        for (int l = 0; l < layers; l++) {
+            int in = sizes[l];
+            int out = sizes[l + 1];
+            // Transpose [in][out] -> [out][in]
+            for (int o = 0; o < out; o++) {
+                for (int i = 0; i < in; i++) {
+                    params[pos++] = weights[l][i][o];
+                }
+            }
+            System.arraycopy(biases[l], 0, params, pos, out);
+            pos += out;
+        }
+        return new InferenceEngine(sizes, activations, params);
+    }
+
+    /**
+     * The input buffer - fill it, then call forward()
+     */
+    public double[] input() {
+        return buffers[0];
+    }
+
+    /**
+     * Run the network on whatever is in input()
+     * @return the output buffer - valid until the next forward()
+     */
+    public double[] forward() {
+        for (int l = 0; l < activations.length; l++) {
+            double[] out = buffers[l + 1];
+            kernel.dense(params, weightOffset[l], biasOffset[l], buffers[l], out, relu[l]);
+            if (!relu[l] && activations[l] != Activation.LINEAR) {
+                for (int o = 0; o < out.length; o++) {
+                    out[o] = activations[l].apply(out[o]);
+                }
+            }
+        }
+        return buffers[buffers.length - 1];
+    }
+
+    /**
+     * Copy the values into the input buffer and run the network
+     */
+    public double[] forward(double[] in) {
+        System.arraycopy(in, 0, buffers[0], 0, sizes[0]);
+        return forward();
+    }
+
+    public int inputSize() {
+        return sizes[0];
+    }
+
+    public int outputSize() {
+        return sizes[sizes.length - 1];
+    }
+
+    public int layerCount() {
+        return activations.length;
+    }
+
+    public int[] sizes() {
+        return sizes.clone();
+    }
+
+    public Activation[] activations() {
+        return activations.clone();
+    }
+
+    /**
+     * The packed parameters (not a copy)
+     */
+    public double[] params() {
+        return params;
+    }
+
+    public DenseKernel kernel() {
+        return kernel;
+    }
+
+    public int weightOffset(int layer) {
+        return weightOffset[layer];
+    }
+
+    public int biasOffset(int layer) {
+        return biasOffset[layer];
+    }
+}
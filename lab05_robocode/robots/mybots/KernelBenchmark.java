@@ -0,0 +1,92 @@
+package mybots;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * KernelBenchmark
+ * Offline micro-benchmark of the dense layer kernels: ns per square layer (width x width
+ * weights + bias + ReLU) for ScalarKernel and, when available, VectorKernel, at several widths,
+ * plus the largest difference between their outputs.
+ *
+ * Usage (VectorKernel compiled as described in its javadoc):
+ *   java --add-modules jdk.incubator.vector -cp robots mybots.KernelBenchmark [width ...]
+ * Without --add-modules only the scalar kernel is measured.
+ */
+public class KernelBenchmark {
+
+    private static final int[] DEFAULT_WIDTHS = {8, 20, 32, 64, 128, 256};
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURE_ROUNDS = 30;
+    // Roughly the same work per round at every width
+    private static final long MACS_PER_ROUND = 20000000L;
+
+    // Consumed result, so the JIT cannot drop the work
+    private static double sink;
+
+    public static void main(String[] args) {
+        int[] widths = DEFAULT_WIDTHS;
+        if (args.length > 0) {
+            widths = new int[args.length];
+            for (int i = 0; i < args.length; i++) widths[i] = Integer.parseInt(args[i]);
+        }
+
+        DenseKernel scalar = DenseKernel.select("scalar");
+        DenseKernel vector = DenseKernel.select("vector");
+        if (vector instanceof ScalarKernel) {
+            System.out.println("VectorKernel unavailable (not compiled, JVM started without --add-modules jdk.incubator.vector, or no SIMD doubles)");
+            vector = null;
+        }
+        System.out.println("Default kernel: " + InferenceEngine.defaultKernel().name());
+
+        System.out.println(String.format(Locale.ROOT, "%6s %14s %14s %8s %12s",
+                "width", "scalar ns", vector == null ? "-" : vector.name() + " ns", "speedup", "max diff"));
+        for (int width : widths) {
+            Random rnd = new Random(width);
+            double[] p = new double[width * width + width];
+            for (int i = 0; i < p.length; i++) p[i] = rnd.nextGaussian() / Math.sqrt(width);
+            double[] input = new double[width];
+            for (int i = 0; i < width; i++) input[i] = rnd.nextGaussian();
+
+            double[] a = new double[width];
+            double[] v = new double[width];
+            int calls = (int) Math.max(1000, MACS_PER_ROUND / ((long) width * width));
+
+            double scalarNs = time(scalar, p, width, input, a, calls);
+            if (vector == null) {
+                System.out.println(String.format(Locale.ROOT, "%6d %14.1f %14s %8s %12s", width, scalarNs, "-", "-", "-"));
+                continue;
+            }
+            double vectorNs = time(vector, p, width, input, v, calls);
+
+            scalar.dense(p, 0, width * width, input, a, true);
+            vector.dense(p, 0, width * width, input, v, true);
+            double diff = 0;
+            for (int i = 0; i < width; i++) diff = Math.max(diff, Math.abs(a[i] - v[i]));
+
+            System.out.println(String.format(Locale.ROOT, "%6d %14.1f %14.1f %7.2fx %12.2e",
+                    width, scalarNs, vectorNs, scalarNs / vectorNs, diff));
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    /**
+     * Median ns per dense() call after warmup
+     */
+    private static double time(DenseKernel kernel, double[] p, int width, double[] input, double[] output, int calls) {
+        double[] ns = new double[MEASURE_ROUNDS];
+        for (int r = 0; r < WARMUP_ROUNDS + MEASURE_ROUNDS; r++) {
+            long t0 = System.nanoTime();
+            for (int n = 0; n < calls; n++) {
+                kernel.dense(p, 0, width * width, input, output, true);
+                // Feed the output back in so calls cannot be overlapped or hoisted
+                input[n % width] += output[0] * 1e-12;
+            }
+            long t = System.nanoTime() - t0;
+            if (r >= WARMUP_ROUNDS) ns[r - WARMUP_ROUNDS] = t / (double) calls;
+            sink += output[0];
+        }
+        java.util.Arrays.sort(ns);
+        return ns[MEASURE_ROUNDS / 2];
+    }
+}
@@ -0,0 +1,139 @@
+package mybots;
+
+/**
+ * LatencyGuard
+ * Decides, scan by scan, whether the expensive policy (the forward pass) may run. Its timings go
+ * into a LatencyHistogram that is restarted every window, so the p99 follows recent behaviour
+ * (JIT warmup, GC, a bigger model file) rather than the whole battle.
+ *
+ *   model in control: if a window's p99 reaches TRIP_FRACTION of the turn budget, switch to
+ *                     the fallback. Half the budget, because the rest of the turn needs time too.
+ *   fallback:         every PROBE_INTERVAL scans the model still runs once, as a probe. If a
+ *                     window of probes has its p99 under RESUME_FRACTION, the model is back.
+ *
+ * OVER_BUDGET_TRIPS passes over the whole budget within one window trip the guard before the
+ * window ends - those turns are already lost. A single slow pass (a GC pause, a class load) does
+ * not: with WINDOW samples the p99 is the second slowest, so one outlier never trips it either.
+ * The first WARMUP_PASSES of the battle run the model but are not recorded, since they time the
+ * interpreter and the JIT compiler rather than the model.
+ *
+ * Usage per scan:
+ *   if (guard.allowModel()) { long t0 = System.nanoTime(); ...forward...; guard.record(System.nanoTime() - t0); }
+ *   else { ...fallback... }
+ */
+public class LatencyGuard {
+
+    public static final double TRIP_FRACTION = 0.5;
+    public static final double RESUME_FRACTION = 0.25;
+    public static final int WINDOW = 100;
+    public static final int PROBE_WINDOW = 10;
+    public static final int PROBE_INTERVAL = 25;
+    public static final int OVER_BUDGET_TRIPS = 3;
+    public static final int WARMUP_PASSES = 50;
+
+    private final long budgetNanos;
+    private final long tripNanos;
+    private final long resumeNanos;
+    private final LatencyHistogram window = new LatencyHistogram();
+
+    private boolean fallback = false;
+    private int sinceProbe = 0;
+    private long lastP99 = 0;
+    private int overBudget = 0;
+    private int warmupLeft = WARMUP_PASSES;
+
+    // Battle totals
+    private long modelScans = 0;
+    private long fallbackScans = 0;
+    private int switchesToFallback = 0;
+    private int switchesBack = 0;
+
+    public LatencyGuard(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+        this.tripNanos = (long) (budgetNanos * TRIP_FRACTION);
+        this.resumeNanos = (long) (budgetNanos * RESUME_FRACTION);
+    }
+
+    /**
+     * Whether the model should answer this scan. When true, the caller must time the pass and
+     * call record(); when false it uses the fallback.
+     */
+    public boolean allowModel() {
+        if (fallback && ++sinceProbe < PROBE_INTERVAL) {
+            fallbackScans++;
+            return false;
+        }
+        sinceProbe = 0;
+        modelScans++;
+        return true;
+    }
+
+    /**
+     * Duration of the model pass allowModel() just let through
+     */
+    public void record(long nanos) {
+        if (warmupLeft > 0) {
+            warmupLeft--;
+            return;
+        }
+        window.record(nanos);
+        if (!fallback && nanos >= budgetNanos && ++overBudget >= OVER_BUDGET_TRIPS) {
+            lastP99 = window.percentile(99);
+            trip();
+            return;
+        }
+        if (window.count() < (fallback ? PROBE_WINDOW : WINDOW)) return;
+
+        lastP99 = window.percentile(99);
+        window.reset();
+        overBudget = 0;
+        if (!fallback && lastP99 >= tripNanos) {
+            trip();
+        } else if (fallback && lastP99 < resumeNanos) {
+            fallback = false;
+            switchesBack++;
+        }
+    }
+
+    private void trip() {
+        fallback = true;
+        sinceProbe = 0;
+        switchesToFallback++;
+        window.reset();
+        overBudget = 0;
+    }
+
+    /**
+     * True while the fallback is in control
+     */
+    public boolean inFallback() {
+        return fallback;
+    }
+
+    /**
+     * p99 of the last completed window (or of the window the over-budget passes tripped)
+     */
+    public long lastP99() {
+        return lastP99;
+    }
+
+    public long modelScans() {
+        return modelScans;
+    }
+
+    public long fallbackScans() {
+        return fallbackScans;
+    }
+
+    public int switchesToFallback() {
+        return switchesToFallback;
+    }
+
+    public int switchesBack() {
+        return switchesBack;
+    }
+
+    public long budgetNanos() {
+        return budgetNanos;
+    }
+}
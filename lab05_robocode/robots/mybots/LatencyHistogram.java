@@ -0,0 +1,92 @@
+package mybots;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram
+ * Fixed-bucket log-linear histogram of nanosecond durations, in the spirit of HdrHistogram.
+ * Values below 64 ns get their own bucket, above that every power of two is split into 32
+ * buckets, so any value is reported within ~3%. Everything is one preallocated long[] -
+ * record() is a couple of shifts and an increment, and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;           // 32 buckets per power of two
+    private static final int LINEAR = SUB_COUNT * 2;              // values below 64 are exact
+    private static final int MAX_SHIFT = 36;                      // covers up to ~2^42 ns (over an hour)
+    private static final int BUCKETS = LINEAR + MAX_SHIFT * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long max = 0;
+    private long sum = 0;
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[indexOf(nanos)]++;
+        total++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    private static int indexOf(long v) {
+        if (v < LINEAR) return (int) v;
+        int shift = (64 - Long.numberOfLeadingZeros(v)) - (SUB_BITS + 1);
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        return LINEAR + (shift - 1) * SUB_COUNT + (int) ((v >> shift) - SUB_COUNT);
+    }
+
+    // Largest value that lands in this bucket
+    private static long upperBound(int index) {
+        if (index < LINEAR) return index;
+        int shift = (index - LINEAR) / SUB_COUNT + 1;
+        long sub = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Value at the given percentile (0-100), reported as the top of its bucket
+     */
+    public long percentile(double p) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(p / 100.0 * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * How many recorded values were above the limit (counted by bucket, so within ~3%)
+     */
+    public long countAbove(long limit) {
+        long n = 0;
+        for (int i = indexOf(limit) + 1; i < BUCKETS; i++) {
+            n += counts[i];
+        }
+        return n;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        max = 0;
+        sum = 0;
+    }
+}
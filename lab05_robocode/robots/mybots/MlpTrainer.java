@@ -0,0 +1,520 @@
+package mybots;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * MlpTrainer
+ * Trains NeuralNetBot's MLP in plain Java, so collect -> train -> deploy needs no Python.
+ * Same recipe as training.py: Glorot uniform weights and zero biases, MSE on the normalized
+ * targets, Adam with Keras' defaults, shuffled mini-batches of 32, the last 20% held out.
+ *
+ * Gradients are data-parallel: every batch is cut into contiguous chunks (at least
+ * MIN_ROWS_PER_TASK rows each), one per worker, run on a ForkJoinPool. Each worker backpropagates
+ * its rows into its own gradient buffer; the buffers are summed in worker order before the Adam
+ * step. No locks or shared writes, and a given seed and thread count always gives the same model.
+ *
+ * Parameters are kept in InferenceEngine layout, so the result is a NeuralModel as it is.
+ * --init starts from an existing model instead of random weights (warm start): its layers,
+ * features and normalization stats are kept. OnlineTrainer uses that to refresh a model on
+ * new segments only.
+ *
+ * --heads also writes the model as a multi-head ModelSet (see writeHeads), e.g. to export a
+ * trained model without further training: --init neural_weights.txt --epochs 0 --heads.
+ *
+ * Usage: java -cp robots;libs/robocode.jar mybots.MlpTrainer <dataset or manifest>
+ *            [--hidden 20:relu,20:relu] [--output linear] [--init neural_weights.txt|.bin]
+ *            [--epochs 100] [--batch 32] [--lr 0.001] [--validation 0.2] [--seed 1] [--threads N]
+ *            [--out dir] [--heads]
+ *        writes neural_weights.txt and neural_weights.bin into dir (default: the current directory)
+ */
+public class MlpTrainer {
+
+    public static final double BETA1 = 0.9;
+    public static final double BETA2 = 0.999;
+    public static final double EPSILON = 1e-7;
+    public static final int MIN_ROWS_PER_TASK = 8;
+
+    private final int[] sizes;
+    private final Activation[] activations;
+    private final double[] params;      // InferenceEngine layout
+    private final int[] weightOffset;
+    private final int[] biasOffset;
+    private final DenseKernel kernel;
+
+    // Adam state
+    private final double[] grad;
+    private final double[] m;
+    private final double[] v;
+    private long step = 0;
+    private double learningRate = 0.001;
+
+    private final ForkJoinPool pool;    // null: everything on the calling thread
+    private final Worker[] workers;
+
+    /**
+     * A new network with Glorot uniform weights
+     */
+    public MlpTrainer(int[] sizes, Activation[] activations, Random rnd, ForkJoinPool pool) {
+        this(sizes, activations, glorot(sizes, rnd), pool);
+    }
+
+    /**
+     * Continue from these parameters (InferenceEngine layout; copied, not modified)
+     */
+    public MlpTrainer(int[] sizes, Activation[] activations, double[] params, ForkJoinPool pool) {
+        InferenceEngine layout = new InferenceEngine(sizes, activations, params.clone());
+        this.sizes = layout.sizes();
+        this.activations = layout.activations();
+        this.params = layout.params();
+        this.kernel = layout.kernel();
+        weightOffset = new int[this.activations.length];
+        biasOffset = new int[this.activations.length];
+        for (int l = 0; l < weightOffset.length; l++) {
+            weightOffset[l] = layout.weightOffset(l);
+            biasOffset[l] = layout.biasOffset(l);
+        }
+        grad = new double[this.params.length];
+        m = new double[this.params.length];
+        v = new double[this.params.length];
+        this.pool = pool;
+        workers = new Worker[pool == null ? 1 : pool.getParallelism()];
+        for (int w = 0; w < workers.length; w++) workers[w] = new Worker();
+    }
+
+    /**
+     * Glorot (Xavier) uniform weights, zero biases - Keras' Dense defaults
+     */
+    public static double[] glorot(int[] sizes, Random rnd) {
+        double[] p = new double[InferenceEngine.packedSize(sizes)];
+        int pos = 0;
+        for (int l = 0; l + 1 < sizes.length; l++) {
+            double limit = Math.sqrt(6.0 / (sizes[l] + sizes[l + 1]));
+            for (int i = 0; i < sizes[l] * sizes[l + 1]; i++) {
+                p[pos++] = (rnd.nextDouble() * 2 - 1) * limit;
+            }
+            pos += sizes[l + 1];
+        }
+        return p;
+    }
+
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * One pass over the training rows in a new random order
+     * @return mean squared error over the epoch (normalized units, weights changing as it goes)
+     */
+    public double trainEpoch(TrainingSet data, int batchSize, Random rnd) {
+        int[] order = new int[data.trainRows];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        double sse = 0;
+        for (int from = 0; from < order.length; from += batchSize) {
+            sse += trainBatch(data, order, from, Math.min(order.length, from + batchSize));
+        }
+        return sse / ((double) order.length * data.outputs);
+    }
+
+    /**
+     * One Adam step on rows order[from, to)
+     * @return their summed squared error before the step
+     */
+    public double trainBatch(final TrainingSet data, final int[] order, final int from, final int to) {
+        final int n = to - from;
+        final int tasks = chunks(n);
+        runChunks(tasks, new IntConsumer() {
+            public void accept(int t) {
+                workers[t].backprop(data, order, from + n * t / tasks, from + n * (t + 1) / tasks);
+            }
+        });
+
+        // Reduce in worker order, scaled to the gradient of the batch mean of per-row MSE
+        double scale = 2.0 / ((double) n * data.outputs);
+        double sse = 0;
+        for (int t = 0; t < tasks; t++) {
+            sse += workers[t].sse;
+            workers[t].sse = 0;
+        }
+        for (int i = 0; i < grad.length; i++) {
+            double s = 0;
+            for (int t = 0; t < tasks; t++) {
+                s += workers[t].grad[i];
+                workers[t].grad[i] = 0;
+            }
+            grad[i] = s * scale;
+        }
+        adamStep();
+        return sse;
+    }
+
+    private void adamStep() {
+        step++;
+        double alpha = learningRate * Math.sqrt(1 - Math.pow(BETA2, step)) / (1 - Math.pow(BETA1, step));
+        for (int i = 0; i < params.length; i++) {
+            double g = grad[i];
+            m[i] = BETA1 * m[i] + (1 - BETA1) * g;
+            v[i] = BETA2 * v[i] + (1 - BETA2) * g * g;
+            params[i] -= alpha * m[i] / (Math.sqrt(v[i]) + EPSILON);
+        }
+    }
+
+    /**
+     * Mean squared error over rows [from, to) in normalized units, without training
+     */
+    public double loss(final TrainingSet data, final int from, final int to) {
+        final int n = to - from;
+        if (n <= 0) return Double.NaN;
+        final int tasks = chunks(n);
+        runChunks(tasks, new IntConsumer() {
+            public void accept(int t) {
+                workers[t].evaluate(data, from + n * t / tasks, from + n * (t + 1) / tasks);
+            }
+        });
+        double sse = 0;
+        for (int t = 0; t < tasks; t++) {
+            sse += workers[t].sse;
+            workers[t].sse = 0;
+        }
+        return sse / ((double) n * data.outputs);
+    }
+
+    public double validationLoss(TrainingSet data) {
+        return loss(data, data.trainRows, data.rows);
+    }
+
+    private int chunks(int rows) {
+        return Math.max(1, Math.min(workers.length, rows / MIN_ROWS_PER_TASK));
+    }
+
+    private void runChunks(int tasks, final IntConsumer body) {
+        if (tasks == 1) {
+            body.accept(0);
+            return;
+        }
+        final List<RecursiveAction> list = new ArrayList<RecursiveAction>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            final int chunk = t;
+            list.add(new RecursiveAction() {
+                protected void compute() {
+                    body.accept(chunk);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(list);
+            }
+        });
+    }
+
+    /**
+     * The trained network with the training set's normalization stats
+     */
+    public NeuralModel toModel(TrainingSet data) {
+        return new NeuralModel(data.inputMean, data.inputStd, data.outputMean, data.outputStd,
+                sizes.clone(), activations.clone(), params.clone(), data.featureSpec());
+    }
+
+    /**
+     * The live parameters (not a copy)
+     */
+    public double[] params() {
+        return params;
+    }
+
+    /**
+     * Per-thread buffers: layer activations, backpropagated errors and a private gradient
+     */
+    private final class Worker {
+        final double[][] a;         // a[0] = input, a[l + 1] = output of layer l
+        final double[][] delta;     // delta[l] = dLoss/d(pre-activation) of layer l
+        final double[] grad = new double[params.length];
+        double sse;
+
+        Worker() {
+            a = new double[sizes.length][];
+            for (int i = 0; i < sizes.length; i++) a[i] = new double[sizes[i]];
+            delta = new double[activations.length][];
+            for (int l = 0; l < activations.length; l++) delta[l] = new double[sizes[l + 1]];
+        }
+
+        void forward(TrainingSet data, int row) {
+            System.arraycopy(data.x, row * data.inputs, a[0], 0, data.inputs);
+            for (int l = 0; l < activations.length; l++) {
+                boolean relu = activations[l] == Activation.RELU;
+                double[] out = a[l + 1];
+                kernel.dense(params, weightOffset[l], biasOffset[l], a[l], out, relu);
+                if (!relu && activations[l] != Activation.LINEAR) {
+                    for (int o = 0; o < out.length; o++) out[o] = activations[l].apply(out[o]);
+                }
+            }
+        }
+
+        void evaluate(TrainingSet data, int from, int to) {
+            int k = data.outputs;
+            double[] y = a[a.length - 1];
+            for (int r = from; r < to; r++) {
+                forward(data, r);
+                for (int o = 0; o < k; o++) {
+                    double err = y[o] - data.y[r * k + o];
+                    sse += err * err;
+                }
+            }
+        }
+
+        void backprop(TrainingSet data, int[] order, int from, int to) {
+            int layers = activations.length;
+            int k = data.outputs;
+            double[] y = a[layers];
+            for (int r = from; r < to; r++) {
+                int row = order[r];
+                forward(data, row);
+
+                // dLoss/dy, the 2 / (k * batch) is applied once in the reduction
+                double[] d = delta[layers - 1];
+                for (int o = 0; o < k; o++) {
+                    double err = y[o] - data.y[row * k + o];
+                    sse += err * err;
+                    d[o] = err * activations[layers - 1].derivative(y[o]);
+                }
+
+                for (int l = layers - 1; l >= 0; l--) {
+                    double[] in = a[l];
+                    double[] dl = delta[l];
+                    int n = in.length;
+                    int w = weightOffset[l];
+                    int b = biasOffset[l];
+                    if (l == 0) {
+                        for (int o = 0; o < dl.length; o++) {
+                            double g = dl[o];
+                            if (g == 0) continue;
+                            grad[b + o] += g;
+                            int rowStart = w + o * n;
+                            for (int i = 0; i < n; i++) grad[rowStart + i] += g * in[i];
+                        }
+                        break;
+                    }
+                    // Weight gradients and the error for the layer below in the same sweep
+                    double[] prev = delta[l - 1];
+                    Arrays.fill(prev, 0);
+                    for (int o = 0; o < dl.length; o++) {
+                        double g = dl[o];
+                        if (g == 0) continue;
+                        grad[b + o] += g;
+                        int rowStart = w + o * n;
+                        for (int i = 0; i < n; i++) {
+                            grad[rowStart + i] += g * in[i];
+                            prev[i] += g * params[rowStart + i];
+                        }
+                    }
+                    Activation act = activations[l - 1];
+                    for (int i = 0; i < n; i++) prev[i] *= act.derivative(in[i]);
+                }
+            }
+        }
+    }
+
+    // --- Command line ---
+
+    /**
+     * Layer widths, inputs first, from a hidden spec like "20:relu,20:relu" (activation optional)
+     */
+    public static int[] layerSizes(int inputs, String hidden, int outputs) {
+        String[] parts = hidden.trim().isEmpty() ? new String[0] : hidden.split(",");
+        int[] sizes = new int[parts.length + 2];
+        sizes[0] = inputs;
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i + 1] = Integer.parseInt(parts[i].split(":")[0].trim());
+        }
+        sizes[sizes.length - 1] = outputs;
+        return sizes;
+    }
+
+    /**
+     * One activation per layer from the same hidden spec (ReLU when not given) plus the output's
+     */
+    public static Activation[] layerActivations(String hidden, String output) {
+        String[] parts = hidden.trim().isEmpty() ? new String[0] : hidden.split(",");
+        Activation[] acts = new Activation[parts.length + 1];
+        for (int i = 0; i < parts.length; i++) {
+            String[] p = parts[i].split(":");
+            acts[i] = p.length > 1 ? Activation.fromLabel(p[1]) : Activation.RELU;
+        }
+        acts[parts.length] = Activation.fromLabel(output);
+        return acts;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.MlpTrainer <dataset or manifest> [--hidden 20:relu,20:relu] [--output linear]"
+                    + " [--init model] [--epochs 100] [--batch 32] [--lr 0.001] [--validation 0.2] [--seed 1] [--threads N] [--out dir]"
+                    + " [--heads]");
+            return;
+        }
+        String hidden = "20:relu,20:relu";
+        String output = "linear";
+        int epochs = 100;
+        int batch = 32;
+        double lr = 0.001;
+        double validation = 0.2;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File outDir = new File(".");
+        File init = null;
+        boolean heads = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--heads")) {
+                heads = true;
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+            String value = args[++i];
+            if (args[i - 1].equals("--hidden")) hidden = value;
+            else if (args[i - 1].equals("--output")) output = value;
+            else if (args[i - 1].equals("--epochs")) epochs = Integer.parseInt(value);
+            else if (args[i - 1].equals("--batch")) batch = Integer.parseInt(value);
+            else if (args[i - 1].equals("--lr")) lr = Double.parseDouble(value);
+            else if (args[i - 1].equals("--validation")) validation = Double.parseDouble(value);
+            else if (args[i - 1].equals("--seed")) seed = Long.parseLong(value);
+            else if (args[i - 1].equals("--threads")) threads = Integer.parseInt(value);
+            else if (args[i - 1].equals("--out")) outDir = new File(value);
+            else if (args[i - 1].equals("--init")) init = new File(value);
+            else throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+        }
+
+        Dataset dataset = DatasetLoader.load(new File(args[0]));
+        NeuralModel start = init == null ? null : readModel(init);
+        TrainingSet data = TrainingSet.from(dataset, validation, start);
+        System.out.println("Loaded " + data.rows + " rows of battle data (" + data.trainRows + " train, "
+                + data.validationRows() + " validation)");
+        System.out.println("Input features: " + data.featureSpec());
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        Random rnd = new Random(seed);
+        MlpTrainer trainer;
+        if (start != null) {
+            trainer = new MlpTrainer(start.sizes, start.activations, start.params, pool);
+            System.out.println("Warm start from " + init + " (" + NeuralModel.describe(start.sizes, start.activations)
+                    + "), val_loss " + String.format(Locale.ROOT, "%.4f", trainer.validationLoss(data)));
+        } else {
+            int[] sizes = layerSizes(data.inputs, hidden, data.outputs);
+            Activation[] acts = layerActivations(hidden, output);
+            trainer = new MlpTrainer(sizes, acts, rnd, pool);
+            System.out.println("Training " + NeuralModel.describe(sizes, acts) + " on " + threads + " threads");
+        }
+        trainer.setLearningRate(lr);
+
+        try {
+            trainer.fit(data, epochs, batch, rnd);
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+        NeuralModel model = trainer.toModel(data);
+        writeModel(model, outDir);
+        if (heads) writeHeads(model, outDir);
+    }
+
+    /**
+     * Train for a number of epochs, printing the losses like Keras does
+     */
+    public void fit(TrainingSet data, int epochs, int batchSize, Random rnd) {
+        for (int e = 1; e <= epochs; e++) {
+            long t0 = System.nanoTime();
+            double loss = trainEpoch(data, batchSize, rnd);
+            double valLoss = validationLoss(data);
+            long ms = (System.nanoTime() - t0) / 1000000;
+            System.out.println(String.format(Locale.ROOT, "Epoch %d/%d - loss %.4f - val_loss %.4f (%d ms)",
+                    e, epochs, loss, valLoss, ms));
+        }
+    }
+
+    /**
+     * A .txt or .bin model file
+     */
+    static NeuralModel readModel(File file) throws IOException {
+        return file.getName().endsWith(".bin") ? NeuralModel.readBinary(file) : NeuralModel.readText(file);
+    }
+
+    /**
+     * Write neural_weights.txt and neural_weights.bin (recording the text file's CRC32) into dir
+     */
+    static void writeModel(NeuralModel model, File dir) throws IOException {
+        File text = new File(dir, NeuralModel.TEXT_FILE);
+        File binary = new File(dir, NeuralModel.BINARY_FILE);
+        model.writeText(text);
+        OutputStream out = new FileOutputStream(binary);
+        try {
+            model.writeBinary(out, ModelCache.crc32(text));
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + text + " and " + binary + " - now move them to the neural net's data directory");
+    }
+
+    /**
+     * Write the model as a multi-head set into dir: trunk.txt (every layer but the last, with the
+     * model's input stats and identity output stats), head_N.txt (output N's row of the last
+     * layer, identity input stats, output N's stats) and a neural_weights.set listing them.
+     * The set computes exactly what the model does; each head can then be retrained or swapped
+     * on its own. NeuralNetBot loads the .set in preference to the other model files.
+     */
+    static void writeHeads(NeuralModel model, File dir) throws IOException {
+        int layers = model.activations.length;
+        if (layers < 2) throw new IllegalArgumentException("A model needs a hidden layer to be split into trunk and heads");
+        int hidden = model.sizes[layers - 1];
+        int outputs = model.outputSize();
+        double[] zeros = new double[hidden];
+        double[] ones = new double[hidden];
+        Arrays.fill(ones, 1);
+
+        int[] trunkSizes = Arrays.copyOf(model.sizes, layers);
+        int trunkParams = InferenceEngine.packedSize(trunkSizes);
+        NeuralModel trunk = new NeuralModel(model.inputMean, model.inputStd, zeros, ones, trunkSizes,
+                Arrays.copyOf(model.activations, layers - 1), Arrays.copyOf(model.params, trunkParams), model.features);
+        trunk.writeText(new File(dir, "trunk.txt"));
+
+        StringBuilder names = new StringBuilder();
+        for (int o = 0; o < outputs; o++) {
+            // Last layer: [out][hidden] weights, then the biases
+            double[] p = new double[hidden + 1];
+            System.arraycopy(model.params, trunkParams + o * hidden, p, 0, hidden);
+            p[hidden] = model.params[trunkParams + outputs * hidden + o];
+            NeuralModel head = new NeuralModel(zeros, ones, new double[] {model.outputMean[o]},
+                    new double[] {model.outputStd[o]}, new int[] {hidden, 1},
+                    new Activation[] {model.activations[layers - 1]}, p, model.features);
+            String name = "head_" + o + ".txt";
+            head.writeText(new File(dir, name));
+            names.append(o > 0 ? "," : "").append(name);
+        }
+
+        File set = new File(dir, ModelSet.FILE);
+        PrintWriter pw = new PrintWriter(set, "UTF-8");
+        try {
+            pw.println("# multi-head export of a " + NeuralModel.describe(model.sizes, model.activations) + " model (MlpTrainer --heads)");
+            pw.println("trunk=trunk.txt");
+            pw.println("heads=" + names);
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) throw new IOException("Could not write " + set);
+        System.out.println("Wrote " + set + " with trunk.txt and " + outputs + " heads");
+    }
+}
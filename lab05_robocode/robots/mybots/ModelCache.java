@@ -0,0 +1,216 @@
+package mybots;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * ModelCache
+ * Keeps the parsed model in a static field, so it survives the new robot instance Robocode
+ * creates every round. Each round the file is read (a few KB) and hashed with CRC32; only if
+ * the path or the hash changed is it parsed again. Works for all three model formats
+ * (neural_weights.q8 / .bin / .txt, told apart by their magic numbers) and for model sets
+ * (neural_weights.set, hashed together with every file it lists). Float models are cached
+ * already compiled - normalization folded into the weights, see ModelCompiler. Int8 models are
+ * kept as they are: folding 1/std into the columns would widen each row's quantization range.
+ *
+ * Entries are immutable and published under a lock, so they can be shared between threads.
+ * Engines are not shared - every robot instance builds its own with Entry.newEngine().
+ */
+public final class ModelCache {
+
+    /**
+     * A loaded model: float, int8 or a model set. Treat the arrays as read-only.
+     * For a model set, sizes is just {inputs, outputs} and activations is empty.
+     */
+    public static final class Entry {
+        public final String path;
+        public final long crc32;
+        public final String description;
+        public final double[] inputMean;
+        public final double[] inputStd;
+        public final double[] outputMean;
+        public final double[] outputStd;
+        public final int[] sizes;
+        public final Activation[] activations;
+        public final String features;
+        private final NeuralModel model;        // exactly one of these is set
+        private final QuantizedModel quantized;
+        private final ModelSet set;
+
+        private Entry(String path, long crc32, NeuralModel model, QuantizedModel quantized, ModelSet set, String format) {
+            this.path = path;
+            this.crc32 = crc32;
+            this.model = model;
+            this.quantized = quantized;
+            this.set = set;
+            if (set != null) {
+                inputMean = set.inputMean;
+                inputStd = set.inputStd;
+                outputMean = set.outputMean;
+                outputStd = set.outputStd;
+                sizes = new int[] {set.inputSize(), set.outputSize()};
+                activations = new Activation[0];
+                features = set.features;
+            } else if (model != null) {
+                inputMean = model.inputMean;
+                inputStd = model.inputStd;
+                outputMean = model.outputMean;
+                outputStd = model.outputStd;
+                sizes = model.sizes;
+                activations = model.activations;
+                features = model.features;
+            } else {
+                inputMean = quantized.inputMean;
+                inputStd = quantized.inputStd;
+                outputMean = quantized.outputMean;
+                outputStd = quantized.outputStd;
+                sizes = quantized.sizes;
+                activations = quantized.activations;
+                features = quantized.features;
+            }
+            String layers = set != null ? set.describe() : NeuralModel.describe(sizes, activations);
+            this.description = new File(path).getName() + " (" + format + ", " + layers
+                    + ", crc32 " + Long.toHexString(crc32) + ")";
+        }
+
+        /**
+         * A new engine (with its own buffers) over the shared weights
+         */
+        public ForwardPass newEngine() {
+            if (set != null) return set.newEngine();
+            return model != null ? model.newEngine() : quantized.newEngine();
+        }
+
+        public NeuralModel model() {
+            return model;
+        }
+
+        public QuantizedModel quantized() {
+            return quantized;
+        }
+
+        public ModelSet set() {
+            return set;
+        }
+    }
+
+    private static Entry current;
+    private static int loads = 0;
+    private static int hits = 0;
+
+    private ModelCache() {
+    }
+
+    /**
+     * The model in this file - parsed again only when its contents changed since the last call
+     */
+    public static synchronized Entry get(File file) throws IOException {
+        byte[] bytes = readAll(file);
+        boolean isSet = file.getName().endsWith(".set");
+        long hash = hash(file, bytes);
+
+        Entry e = current;
+        if (e != null && e.path.equals(file.getPath()) && e.crc32 == hash) {
+            hits++;
+            return e;
+        }
+        current = isSet ? new Entry(file.getPath(), hash, null, null, ModelSet.read(file, bytes), "set")
+                : parse(file.getPath(), hash, bytes);
+        loads++;
+        return current;
+    }
+
+    /**
+     * The CRC32 an Entry for this file would have - what PolicyGrid records about its source model
+     */
+    public static long crc32(File file) throws IOException {
+        return hash(file, readAll(file));
+    }
+
+    private static long hash(File file, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        if (file.getName().endsWith(".set")) {
+            // A changed member must invalidate the set too
+            for (File part : ModelSet.parts(file, bytes)) {
+                byte[] b = readAll(part);
+                crc.update(b, 0, b.length);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Whether a .bin or .q8 model was converted from some other version of this text model:
+     * its recorded source CRC32 differs from the text file's, or, for files that record none,
+     * it is older than the text file. False when the text file is missing or empty.
+     */
+    public static boolean isStale(File derived, File text) throws IOException {
+        if (!text.exists() || text.length() == 0) return false;
+        long source = sourceCrc32(derived);
+        if (source == NeuralModel.UNKNOWN_SOURCE) return derived.lastModified() < text.lastModified();
+        return source != crc32(text);
+    }
+
+    /**
+     * CRC32 of the text model a .bin or .q8 file was converted from, or NeuralModel.UNKNOWN_SOURCE
+     */
+    public static long sourceCrc32(File file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(readAll(file));
+        return bytes.remaining() >= 4 && bytes.order(ByteOrder.LITTLE_ENDIAN).getInt(0) == QuantizedModel.MAGIC
+                ? QuantizedModel.sourceCrc32(bytes) : NeuralModel.sourceCrc32(bytes);
+    }
+
+    private static Entry parse(String path, long hash, byte[] bytes) throws IOException {
+        int magic = bytes.length >= 4 ? ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(0) : 0;
+        if (magic == QuantizedModel.MAGIC) {
+            return new Entry(path, hash, null, QuantizedModel.read(ByteBuffer.wrap(bytes)), null, "int8");
+        }
+        if (magic == NeuralModel.MAGIC) {
+            return new Entry(path, hash, ModelCompiler.fuseNormalization(NeuralModel.readBinary(ByteBuffer.wrap(bytes))), null, null, "binary");
+        }
+        BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        return new Entry(path, hash, ModelCompiler.fuseNormalization(NeuralModel.readText(br)), null, null, "text");
+    }
+
+    static byte[] readAll(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * How many times a file was actually parsed
+     */
+    public static synchronized int loads() {
+        return loads;
+    }
+
+    /**
+     * How many times the cached model was reused
+     */
+    public static synchronized int hits() {
+        return hits;
+    }
+
+    /**
+     * Drop the cached model (the next get() parses again)
+     */
+    public static synchronized void clear() {
+        current = null;
+    }
+}
@@ -0,0 +1,151 @@
+package mybots;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * ModelCompiler
+ * Rewrites a NeuralModel so the robot does less work per scan:
+ *   - input normalization (x - mean) / std is folded into the first layer:
+ *       W1'[o][i] = W1[o][i] / std[i],   b1'[o] = b1[o] - sum_i W1[o][i] * mean[i] / std[i]
+ *   - output denormalization y * std + mean is folded into a linear last layer:
+ *       WL'[o][i] = WL[o][i] * std[o],   bL'[o] = bL[o] * std[o] + mean[o]
+ * The compiled model has identity stats (mean 0, std 1), which NeuralNetBot detects and skips.
+ * ReLU is already fused into the matrix-vector pass by the DenseKernel.
+ *
+ * main() verifies that the compiled model matches the original over a logged dataset.
+ * Usage: java -cp robots;libs/robocode.jar mybots.ModelCompiler <model .txt/.bin> <dataset or manifest>
+ */
+public class ModelCompiler {
+
+    // Largest relative difference main() accepts - a few hundred ulps of rounding
+    private static final double TOLERANCE = 1e-12;
+
+    /**
+     * Fold whatever normalization can be folded. Input stats are only folded when every std is
+     * non-zero and finite; output stats only when the last layer is linear.
+     */
+    public static NeuralModel fuseNormalization(NeuralModel m) {
+        double[] params = m.params.clone();
+        InferenceEngine layout = m.newEngine();
+        int last = m.activations.length - 1;
+
+        double[] inputMean = m.inputMean;
+        double[] inputStd = m.inputStd;
+        if (!isIdentity(inputMean, inputStd) && allUsable(inputStd)) {
+            int in = m.sizes[0];
+            int w = layout.weightOffset(0);
+            int b = layout.biasOffset(0);
+            for (int o = 0; o < m.sizes[1]; o++) {
+                double shift = 0;
+                for (int i = 0; i < in; i++) {
+                    double scaled = m.params[w + o * in + i] / inputStd[i];
+                    params[w + o * in + i] = scaled;
+                    shift += scaled * inputMean[i];
+                }
+                params[b + o] = m.params[b + o] - shift;
+            }
+            inputMean = new double[in];
+            inputStd = ones(in);
+        }
+
+        double[] outputMean = m.outputMean;
+        double[] outputStd = m.outputStd;
+        if (!isIdentity(outputMean, outputStd) && m.activations[last] == Activation.LINEAR) {
+            int in = m.sizes[last];
+            int out = m.sizes[last + 1];
+            int w = layout.weightOffset(last);
+            int b = layout.biasOffset(last);
+            for (int o = 0; o < out; o++) {
+                for (int i = 0; i < in; i++) {
+                    params[w + o * in + i] *= outputStd[o];
+                }
+                params[b + o] = params[b + o] * outputStd[o] + outputMean[o];
+            }
+            outputMean = new double[out];
+            outputStd = ones(out);
+        }
+
+        return new NeuralModel(inputMean, inputStd, outputMean, outputStd,
+                m.sizes, m.activations, params, m.features);
+    }
+
+    /**
+     * True if (x - mean) / std would leave every value unchanged
+     */
+    public static boolean isIdentity(double[] mean, double[] std) {
+        for (int i = 0; i < mean.length; i++) {
+            if (mean[i] != 0 || std[i] != 1) return false;
+        }
+        return true;
+    }
+
+    private static boolean allUsable(double[] std) {
+        for (double s : std) {
+            if (s == 0 || Double.isNaN(s) || Double.isInfinite(s)) return false;
+        }
+        return true;
+    }
+
+    private static double[] ones(int n) {
+        double[] v = new double[n];
+        Arrays.fill(v, 1);
+        return v;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java mybots.ModelCompiler <neural_weights.txt|.bin> <dataset file or training_data.manifest>");
+            return;
+        }
+        File modelFile = new File(args[0]);
+        File dataFile = new File(args[1]);
+        NeuralModel model = modelFile.getName().endsWith(".bin") ? NeuralModel.readBinary(modelFile) : NeuralModel.readText(modelFile);
+        NeuralModel fused = fuseNormalization(model);
+        Dataset data = dataFile.getName().endsWith(".manifest")
+                ? DatasetLoader.loadManifest(dataFile, null, false) : DatasetLoader.load(dataFile);
+
+        String[] inputColumns = FeatureExtractor.parse(model.features).columnNames();
+        int[] columnIndex = new int[inputColumns.length];
+        for (int i = 0; i < inputColumns.length; i++) {
+            columnIndex[i] = data.columnIndex(inputColumns[i]);
+            if (columnIndex[i] < 0) throw new IllegalArgumentException("Dataset has no column " + inputColumns[i]);
+        }
+
+        InferenceEngine plain = model.newEngine();
+        InferenceEngine compiled = fused.newEngine();
+        int outputs = model.outputSize();
+        double[] maxAbs = new double[outputs];
+        double[] maxRel = new double[outputs];
+        for (int r = 0; r < data.rows; r++) {
+            double[] a = plain.input();
+            double[] b = compiled.input();
+            for (int i = 0; i < columnIndex.length; i++) {
+                double raw = data.get(r, columnIndex[i]);
+                a[i] = (raw - model.inputMean[i]) / model.inputStd[i];
+                b[i] = (raw - fused.inputMean[i]) / fused.inputStd[i];
+            }
+            double[] ya = plain.forward();
+            double[] yb = compiled.forward();
+            for (int o = 0; o < outputs; o++) {
+                double expected = ya[o] * model.outputStd[o] + model.outputMean[o];
+                double actual = yb[o] * fused.outputStd[o] + fused.outputMean[o];
+                double err = Math.abs(expected - actual);
+                maxAbs[o] = Math.max(maxAbs[o], err);
+                maxRel[o] = Math.max(maxRel[o], err / Math.max(1.0, Math.abs(expected)));
+            }
+        }
+
+        System.out.println("Inputs folded: " + isIdentity(fused.inputMean, fused.inputStd)
+                + ", outputs folded: " + isIdentity(fused.outputMean, fused.outputStd));
+        boolean ok = true;
+        for (int o = 0; o < outputs; o++) {
+            System.out.println(String.format(Locale.ROOT, "output %d: max abs diff %.3e, max rel diff %.3e", o, maxAbs[o], maxRel[o]));
+            if (maxRel[o] > TOLERANCE) ok = false;
+        }
+        System.out.println((ok ? "EQUIVALENT" : "MISMATCH") + " over " + data.rows + " rows (tolerance " + TOLERANCE + ")");
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,67 @@
+package mybots;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * ModelConverter
+ * Offline tool: converts neural_weights.txt (as training.py writes it) into the binary
+ * neural_weights.bin that NeuralNetBot loads without any text parsing, checks that the
+ * round trip is exact, and prints how long each format takes to load. The .bin records the
+ * text file's CRC32, so NeuralNetBot skips it once the text model is retrained.
+ *
+ * Usage: java -cp robots mybots.ModelConverter <neural_weights.txt> [out.bin]
+ *        (default output: neural_weights.bin next to the input)
+ */
+public class ModelConverter {
+
+    private static final int TIMING_LOADS = 50;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.ModelConverter <neural_weights.txt> [out.bin]");
+            return;
+        }
+        File textFile = new File(args[0]);
+        File binFile = args.length > 1 ? new File(args[1])
+                : new File(textFile.getAbsoluteFile().getParentFile(), NeuralModel.BINARY_FILE);
+
+        NeuralModel model = NeuralModel.readText(textFile);
+        OutputStream out = new FileOutputStream(binFile);
+        try {
+            model.writeBinary(out, ModelCache.crc32(textFile));
+        } finally {
+            out.close();
+        }
+
+        NeuralModel back = NeuralModel.readBinary(binFile);
+        if (!Arrays.equals(model.params, back.params) || !Arrays.equals(model.inputMean, back.inputMean)
+                || !Arrays.equals(model.inputStd, back.inputStd) || !Arrays.equals(model.outputMean, back.outputMean)
+                || !Arrays.equals(model.outputStd, back.outputStd) || !Arrays.equals(model.sizes, back.sizes)
+                || !Arrays.equals(model.activations, back.activations) || !model.features.equals(back.features)) {
+            throw new IOException("Round trip through " + binFile + " is not exact");
+        }
+        System.out.println("Wrote " + binFile + ": " + binFile.length() + " bytes (text model: " + textFile.length() + " bytes)");
+
+        System.out.println("Median load time: text " + medianLoadMicros(textFile, false) + " us, binary "
+                + medianLoadMicros(binFile, true) + " us");
+    }
+
+    private static long medianLoadMicros(File file, boolean binary) throws IOException {
+        long[] t = new long[TIMING_LOADS];
+        for (int i = 0; i < TIMING_LOADS; i++) {
+            long t0 = System.nanoTime();
+            if (binary) {
+                NeuralModel.readBinary(file);
+            } else {
+                NeuralModel.readText(file);
+            }
+            t[i] = (System.nanoTime() - t0) / 1000;
+        }
+        Arrays.sort(t);
+        return t[TIMING_LOADS / 2];
+    }
+}
@@ -0,0 +1,201 @@
+package mybots;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ModelSet
+ * Several float models run as one BranchedEngine, listed in a small text manifest
+ * (neural_weights.set, paths relative to it, # starts a comment):
+ *
+ *   # ensemble - every member reads the features, the outputs are averaged
+ *   members=seed1.bin,seed2.bin,seed3.txt
+ *
+ *   # multi-head - the trunk's hidden layers run once, every head reads its last layer,
+ *   # the heads' outputs are concatenated in the order listed
+ *   trunk=trunk.txt
+ *   heads=turn.txt,move.txt,fire.txt
+ *
+ * Every part is an ordinary neural_weights .txt/.bin file and is compiled (ModelCompiler) as it
+ * is loaded. Ensemble members must agree on features, inputs, outputs and any normalization
+ * that could not be folded. Between a trunk and its heads nothing may be left to normalize:
+ * after compiling, the trunk's output stats and the heads' input stats must be identity.
+ * MlpTrainer --heads writes such a trunk, heads and manifest from a trained model.
+ */
+public class ModelSet {
+
+    public static final String FILE = "neural_weights.set";
+
+    public final NeuralModel trunk;         // null for an ensemble
+    public final NeuralModel[] branches;    // heads or members
+    public final BranchedEngine.Combine combine;
+    public final double[] inputMean;
+    public final double[] inputStd;
+    public final double[] outputMean;
+    public final double[] outputStd;
+    public final String features;
+
+    public ModelSet(NeuralModel trunk, NeuralModel[] branches) {
+        if (branches.length == 0) throw new IllegalArgumentException("A model set needs at least one head or member");
+        this.trunk = trunk;
+        this.branches = branches.clone();
+        NeuralModel head = trunk != null ? trunk : branches[0];
+        inputMean = head.inputMean;
+        inputStd = head.inputStd;
+        features = head.features;
+
+        if (trunk == null) {
+            combine = BranchedEngine.Combine.MEAN;
+            for (int b = 1; b < branches.length; b++) {
+                NeuralModel m = branches[b];
+                if (m.inputSize() != head.inputSize() || m.outputSize() != head.outputSize()) {
+                    throw new IllegalArgumentException("Ensemble member " + b + " has " + m.inputSize() + " inputs and "
+                            + m.outputSize() + " outputs, member 0 has " + head.inputSize() + " and " + head.outputSize());
+                }
+                if (!m.features.equals(features) || !Arrays.equals(m.inputMean, inputMean) || !Arrays.equals(m.inputStd, inputStd)
+                        || !Arrays.equals(m.outputMean, head.outputMean) || !Arrays.equals(m.outputStd, head.outputStd)) {
+                    throw new IllegalArgumentException("Ensemble member " + b + " has different features or normalization than member 0");
+                }
+            }
+            outputMean = head.outputMean;
+            outputStd = head.outputStd;
+        } else {
+            combine = BranchedEngine.Combine.CONCAT;
+            if (!ModelCompiler.isIdentity(trunk.outputMean, trunk.outputStd)) {
+                throw new IllegalArgumentException("The trunk's output stats must be identity");
+            }
+            int outputs = 0;
+            for (int b = 0; b < branches.length; b++) {
+                if (branches[b].inputSize() != trunk.outputSize()) {
+                    throw new IllegalArgumentException("Head " + b + " reads " + branches[b].inputSize()
+                            + " values but the trunk outputs " + trunk.outputSize());
+                }
+                if (!ModelCompiler.isIdentity(branches[b].inputMean, branches[b].inputStd)) {
+                    throw new IllegalArgumentException("Head " + b + " must not normalize its inputs");
+                }
+                outputs += branches[b].outputSize();
+            }
+            outputMean = new double[outputs];
+            outputStd = new double[outputs];
+            int pos = 0;
+            for (NeuralModel m : branches) {
+                System.arraycopy(m.outputMean, 0, outputMean, pos, m.outputSize());
+                System.arraycopy(m.outputStd, 0, outputStd, pos, m.outputSize());
+                pos += m.outputSize();
+            }
+        }
+    }
+
+    /**
+     * The part files a manifest lists, trunk first
+     */
+    public static List<File> parts(File manifest, byte[] bytes) throws IOException {
+        String[] keys = parseManifest(manifest, bytes);
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        List<File> files = new ArrayList<File>();
+        if (keys[0] != null) files.add(new File(dir, keys[0]));
+        for (String name : (keys[2] != null ? keys[2] : keys[1]).split(",")) {
+            if (!name.trim().isEmpty()) files.add(new File(dir, name.trim()));
+        }
+        return files;
+    }
+
+    /**
+     * Load every part a manifest lists
+     */
+    public static ModelSet read(File manifest, byte[] bytes) throws IOException {
+        List<File> files = parts(manifest, bytes);
+        NeuralModel trunk = parseManifest(manifest, bytes)[0] != null ? readPart(files.remove(0)) : null;
+        NeuralModel[] branches = new NeuralModel[files.size()];
+        for (int b = 0; b < branches.length; b++) {
+            branches[b] = readPart(files.get(b));
+        }
+        try {
+            return new ModelSet(trunk, branches);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(manifest.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return {trunk, heads, members}, unused ones null
+     */
+    private static String[] parseManifest(File manifest, byte[] bytes) throws IOException {
+        String[] keys = new String[3];
+        BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int eq = line.indexOf('=');
+            if (eq < 0) throw new IOException("Not a key=value line in " + manifest.getName() + ": " + line);
+            String key = line.substring(0, eq).trim();
+            String value = line.substring(eq + 1).trim();
+            if (key.equals("trunk")) keys[0] = value;
+            else if (key.equals("heads")) keys[1] = value;
+            else if (key.equals("members")) keys[2] = value;
+            else throw new IOException("Unknown key " + key + " in " + manifest.getName());
+        }
+        if ((keys[2] == null) == (keys[1] == null) || (keys[0] == null) != (keys[1] == null)) {
+            throw new IOException(manifest.getName() + " needs either members= or trunk= and heads=");
+        }
+        return keys;
+    }
+
+    private static NeuralModel readPart(File file) throws IOException {
+        byte[] bytes = ModelCache.readAll(file);
+        int magic = bytes.length >= 4 ? ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(0) : 0;
+        if (magic == QuantizedModel.MAGIC) throw new IOException(file.getName() + ": int8 models cannot be part of a set");
+        NeuralModel model = magic == NeuralModel.MAGIC
+                ? NeuralModel.readBinary(ByteBuffer.wrap(bytes))
+                : NeuralModel.readText(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)));
+        return ModelCompiler.fuseNormalization(model);
+    }
+
+    public BranchedEngine newEngine() {
+        int n = branches.length;
+        int[][] sizes = new int[n][];
+        Activation[][] activations = new Activation[n][];
+        double[][] params = new double[n][];
+        for (int b = 0; b < n; b++) {
+            sizes[b] = branches[b].sizes;
+            activations[b] = branches[b].activations;
+            params[b] = branches[b].params;
+        }
+        return new BranchedEngine(trunk != null ? trunk.newEngine() : null, sizes, activations, params, combine);
+    }
+
+    public int inputSize() {
+        return inputMean.length;
+    }
+
+    public int outputSize() {
+        return outputMean.length;
+    }
+
+    /**
+     * "ensemble of 3: 7-20 relu-20 relu-3 linear, ..." or "trunk 7-32 relu, heads: 32-1 linear, ...", for logs
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        if (trunk != null) {
+            sb.append("trunk ").append(NeuralModel.describe(trunk.sizes, trunk.activations)).append(", heads: ");
+        } else {
+            sb.append("ensemble of ").append(branches.length).append(": ");
+        }
+        for (int b = 0; b < branches.length; b++) {
+            if (b > 0) sb.append(", ");
+            sb.append(NeuralModel.describe(branches[b].sizes, branches[b].activations));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,371 @@
+package mybots;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+/**
+ * NeuralModel
+ * A trained network as written by training.py or MlpTrainer: normalization stats, layer
+ * shapes and the weights packed in InferenceEngine layout. Shared by NeuralNetBot and the
+ * offline tools.
+ *
+ * neural_weights.txt, one comma separated line each:
+ *   1-2   input mean, input std
+ *   3-4   output mean, output std
+ *   then two lines per layer: weights (flattened row by row from Keras' [in][out]), biases
+ *   then optional key=value lines:
+ *     features=...      the FeatureExtractor spec the net was trained on (default: legacy)
+ *     activations=...   one per layer: relu, tanh, linear or leaky_relu
+ *     sizes=...         layer widths, inputs first - only checked, the widths come from the biases
+ * The depth is the number of weight/bias line pairs. Files without activations= are the
+ * original three layer nets: ReLU, ReLU, linear (every hidden layer ReLU, the output linear).
+ *
+ * neural_weights.bin (ModelConverter writes it from the text file, all little-endian):
+ *   0  int    magic "RCNN"
+ *   4  short  format version
+ *   6  short  layer count L
+ *   8  long   CRC32 of the neural_weights.txt it was converted from, or -1 (version 2+)
+ *   16 int    sizes[0..L]
+ *   .. byte   activation ordinal per layer
+ *   .. short  features spec length, UTF-8 bytes
+ *   .. zero padding to a multiple of 8
+ *   .. double input mean, input std (sizes[0] each), output mean, output std (sizes[L] each)
+ *   .. double params in InferenceEngine layout, until end of file
+ * Loading it is one file read plus bulk copies - no text parsing. The source CRC lets
+ * NeuralNetBot skip a .bin left behind after the text model was retrained (version 1 files
+ * have none and read as UNKNOWN_SOURCE).
+ */
+public class NeuralModel {
+
+    public static final String TEXT_FILE = "neural_weights.txt";
+    public static final String BINARY_FILE = "neural_weights.bin";
+    public static final int MAGIC = 0x4E4E4352; // "RCNN" when read as little-endian bytes
+    public static final int VERSION = 2;
+    public static final long UNKNOWN_SOURCE = -1;
+
+    public final double[] inputMean;
+    public final double[] inputStd;
+    public final double[] outputMean;
+    public final double[] outputStd;
+    public final int[] sizes;
+    public final Activation[] activations;
+    public final double[] params;       // InferenceEngine layout, [out][in] per layer
+    public final String features;       // FeatureExtractor spec
+
+    public NeuralModel(double[] inputMean, double[] inputStd, double[] outputMean, double[] outputStd,
+                       int[] sizes, Activation[] activations, double[] params, String features) {
+        this.inputMean = inputMean;
+        this.inputStd = inputStd;
+        this.outputMean = outputMean;
+        this.outputStd = outputStd;
+        this.sizes = sizes;
+        this.activations = activations;
+        this.params = params;
+        this.features = features;
+    }
+
+    public static NeuralModel readText(File file) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            return readText(br);
+        } finally {
+            br.close();
+        }
+    }
+
+    public static NeuralModel readText(BufferedReader br) throws IOException {
+        // Numeric lines in order, key=value lines by key
+        List<String> lines = new ArrayList<String>();
+        Properties keys = new Properties();
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            int eq = line.indexOf('=');
+            if (eq > 0 && Character.isLetter(line.charAt(0))) {
+                keys.setProperty(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+            } else {
+                lines.add(line);
+            }
+        }
+        if (lines.size() < 6 || lines.size() % 2 != 0) {
+            throw new IOException("Weights file has " + lines.size() + " numeric lines, expected 4 + 2 per layer");
+        }
+
+        // Read Normalization Stats
+        double[] inputMean = parseLine(lines.get(0));
+        double[] inputStd = parseLine(lines.get(1));
+        double[] outputMean = parseLine(lines.get(2));
+        double[] outputStd = parseLine(lines.get(3));
+
+        // Dense layers; the widths come from the bias lines
+        int layers = (lines.size() - 4) / 2;
+        double[][][] w = new double[layers][][];
+        double[][] b = new double[layers][];
+        int in = inputMean.length;
+        for (int l = 0; l < layers; l++) {
+            double[] flat = parseLine(lines.get(4 + 2 * l));
+            b[l] = parseLine(lines.get(5 + 2 * l));
+            int out = b[l].length;
+            if (flat.length != in * out) {
+                throw new IOException("Layer " + (l + 1) + " has " + flat.length + " weights, expected " + in + "x" + out);
+            }
+            w[l] = new double[in][out];
+            int k = 0;
+            for (int i = 0; i < in; i++) {
+                for (int j = 0; j < out; j++) {
+                    w[l][i][j] = flat[k++];
+                }
+            }
+            in = out;
+        }
+        if (outputMean.length != in) {
+            throw new IOException("Model has " + in + " outputs but " + outputMean.length + " output stats");
+        }
+
+        Activation[] activations = new Activation[layers];
+        String spec = keys.getProperty("activations");
+        if (spec == null) {
+            for (int l = 0; l < layers; l++) {
+                activations[l] = l == layers - 1 ? Activation.LINEAR : Activation.RELU;
+            }
+        } else {
+            String[] names = spec.split(",");
+            if (names.length != layers) {
+                throw new IOException(names.length + " activations listed for " + layers + " layers");
+            }
+            for (int l = 0; l < layers; l++) {
+                try {
+                    activations[l] = Activation.fromLabel(names[l]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+        }
+
+        InferenceEngine packed = InferenceEngine.fromKeras(w, b, activations);
+        String sizes = keys.getProperty("sizes");
+        if (sizes != null && !sizes.replace(" ", "").equals(describeSizes(packed.sizes()))) {
+            throw new IOException("Layer sizes " + describeSizes(packed.sizes()) + " do not match sizes=" + sizes);
+        }
+        return new NeuralModel(inputMean, inputStd, outputMean, outputStd,
+                packed.sizes(), activations, packed.params(), keys.getProperty("features", "legacy"));
+    }
+
+    /**
+     * Write neural_weights.txt in the same layout as training.py, including the features=,
+     * activations= and sizes= lines. Doubles are written in full, so readText() gets back
+     * exactly these values.
+     */
+    public void writeText(File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            writeText(pw);
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) throw new IOException("Could not write " + file);
+    }
+
+    public void writeText(PrintWriter pw) {
+        pw.println(joinLine(inputMean, 0, inputMean.length));
+        pw.println(joinLine(inputStd, 0, inputStd.length));
+        pw.println(joinLine(outputMean, 0, outputMean.length));
+        pw.println(joinLine(outputStd, 0, outputStd.length));
+        int pos = 0;
+        for (int l = 0; l < activations.length; l++) {
+            int in = sizes[l];
+            int out = sizes[l + 1];
+            // Back to Keras' [in][out] order
+            double[] w = new double[in * out];
+            for (int o = 0; o < out; o++) {
+                for (int i = 0; i < in; i++) {
+                    w[i * out + o] = params[pos + o * in + i];
+                }
+            }
+            pos += in * out;
+            pw.println(joinLine(w, 0, w.length));
+            pw.println(joinLine(params, pos, out));
+            pos += out;
+        }
+        pw.println("features=" + features);
+        StringBuilder acts = new StringBuilder();
+        for (int l = 0; l < activations.length; l++) {
+            if (l > 0) acts.append(',');
+            acts.append(activations[l].label);
+        }
+        pw.println("activations=" + acts);
+        pw.println("sizes=" + describeSizes(sizes));
+    }
+
+    private static String joinLine(double[] values, int from, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(values[from + i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * "7,20,20,3"
+     */
+    public static String describeSizes(int[] sizes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sizes.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(sizes[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * "7-20 relu-20 relu-3 linear", for logs
+     */
+    public static String describe(int[] sizes, Activation[] activations) {
+        StringBuilder sb = new StringBuilder().append(sizes[0]);
+        for (int l = 0; l < activations.length; l++) {
+            sb.append('-').append(sizes[l + 1]).append(' ').append(activations[l].label);
+        }
+        return sb.toString();
+    }
+
+    private static double[] parseLine(String line) throws IOException {
+        if (line == null) throw new IOException("Weights file is truncated");
+        StringTokenizer st = new StringTokenizer(line, ",");
+        double[] res = new double[st.countTokens()];
+        int i = 0;
+        while (st.hasMoreTokens()) {
+            res[i++] = Double.parseDouble(st.nextToken());
+        }
+        return res;
+    }
+
+    /**
+     * Size of the header before the first double, padding included
+     */
+    private int headerBytes() {
+        int n = 16 + 4 * sizes.length + activations.length + 2 + features.getBytes(StandardCharsets.UTF_8).length;
+        return (n + 7) & ~7;
+    }
+
+    /**
+     * Size of the file writeBinary() produces
+     */
+    public int binarySize() {
+        return headerBytes() + 8 * (2 * inputSize() + 2 * outputSize() + params.length);
+    }
+
+    public void writeBinary(OutputStream out) throws IOException {
+        writeBinary(out, UNKNOWN_SOURCE);
+    }
+
+    /**
+     * @param sourceCrc32 CRC32 of the text file this model was read from, or UNKNOWN_SOURCE
+     */
+    public void writeBinary(OutputStream out, long sourceCrc32) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(binarySize()).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.putShort((short) activations.length);
+        buf.putLong(sourceCrc32);
+        for (int size : sizes) buf.putInt(size);
+        for (Activation a : activations) buf.put((byte) a.ordinal());
+        byte[] spec = features.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) spec.length);
+        buf.put(spec);
+        buf.position(headerBytes());
+        buf.asDoubleBuffer().put(inputMean).put(inputStd).put(outputMean).put(outputStd).put(params);
+        out.write(buf.array());
+    }
+
+    /**
+     * Read neural_weights.bin with a single read into memory. (Not mapped: a live mapping
+     * would keep the file locked on Windows until GC, and the converter could not replace it.)
+     */
+    public static NeuralModel readBinary(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return readBinary(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Parse a binary model from memory - a heap buffer or a mapped file
+     */
+    public static NeuralModel readBinary(ByteBuffer bytes) throws IOException {
+        ByteBuffer buf = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buf.getInt() != MAGIC) throw new IOException("Not a binary model file");
+            int version = buf.getShort();
+            if (version != 1 && version != VERSION) throw new IOException("Unsupported binary model version " + version);
+            int layers = buf.getShort();
+            if (version >= 2) buf.getLong();
+            int[] sizes = new int[layers + 1];
+            for (int i = 0; i <= layers; i++) sizes[i] = buf.getInt();
+            Activation[] activations = new Activation[layers];
+            for (int l = 0; l < layers; l++) activations[l] = Activation.values()[buf.get()];
+            byte[] spec = new byte[buf.getShort()];
+            buf.get(spec);
+            buf.position((buf.position() + 7) & ~7);
+
+            double[] inputMean = new double[sizes[0]];
+            double[] inputStd = new double[sizes[0]];
+            double[] outputMean = new double[sizes[layers]];
+            double[] outputStd = new double[sizes[layers]];
+            double[] params = new double[InferenceEngine.packedSize(sizes)];
+            if (buf.remaining() != 8 * (2 * sizes[0] + 2 * sizes[layers] + params.length)) {
+                throw new IOException("Binary model size does not match its header");
+            }
+            buf.asDoubleBuffer().get(inputMean).get(inputStd).get(outputMean).get(outputStd).get(params);
+            return new NeuralModel(inputMean, inputStd, outputMean, outputStd, sizes, activations, params,
+                    new String(spec, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, bad activation ordinal, negative sizes
+            throw new IOException("Corrupt binary model file: " + e, e);
+        }
+    }
+
+    /**
+     * The source CRC32 in a binary model's header, without parsing the rest
+     */
+    public static long sourceCrc32(ByteBuffer bytes) {
+        ByteBuffer buf = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < 16 || buf.getInt(0) != MAGIC || buf.getShort(4) < 2) return UNKNOWN_SOURCE;
+        return buf.getLong(8);
+    }
+
+    /**
+     * A fresh engine over these weights (the engine shares the params array, it does not copy it)
+     */
+    public InferenceEngine newEngine() {
+        return new InferenceEngine(sizes, activations, params);
+    }
+
+    public int inputSize() {
+        return sizes[0];
+    }
+
+    public int outputSize() {
+        return sizes[sizes.length - 1];
+    }
+}
@@ -2,25 +2,34 @@ package mybots;
 
 import robocode.*;
 import robocode.util.Utils;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
 
 /**
  * NeuralNetBot
  * A robot that reads a raw text file containing NN weights
- * and performs a Forward Pass to decide on actions.
+ * (or its int8 quantized version) and performs a Forward Pass to decide on actions.
+ * If a precomputed policy_grid.bin is present (see PolicyGridBuilder) it is tried first,
+ * with the forward pass as the fallback for states outside the grid.
+ * The forward pass runs behind a LatencyGuard: if its recent p99 gets close to the turn budget
+ * (or the weights did not load at all) the bot falls back to the circle-strafe teacher.
+ * latency.guard=false in bot.properties turns the guard off, so every scan the grid does not
+ * answer runs the network - BattleEvaluator writes that for its headless workers.
  */
 public class NeuralNetBot extends AdvancedRobot {
 
-    // Network Architecture 
-    // Note that this MUST match the training.py globals
-    final int INPUT_NODES = 7;
-    final int HIDDEN_NODES = 20;
+    // Network Architecture
+    // The layers (count, widths, activations) come from the model file, the inputs from its
+    // features spec - only the three outputs are fixed, because the bot decodes them below
     final int OUTPUT_NODES = 3;
 
+    // Builds the input vector exactly the way DataCollectorBot logged it
+    FeatureExtractor features;
+
     // Input normalization constants
     double[] inputMean;
     double[] inputStd;
@@ -29,70 +38,118 @@ public class NeuralNetBot extends AdvancedRobot {
     double[] outputMean;
     double[] outputStd;
 
-    // Layer 1 (Input -> Hidden 1)
-    double[][] w1;
-    double[] b1;
+    // The dense layers - InferenceEngine, QuantizedEngine for an int8 model, BranchedEngine for a model set
+    ForwardPass engine;
 
-    // Layer 2 (Hidden 1 -> Hidden 2)
-    double[][] w2;
-    double[] b2;
+    // Denormalized outputs, reused every scan
+    double[] denormalized = new double[OUTPUT_NODES];
 
-    // Layer 3 (Hidden 2 -> Output)
-    double[][] w3;
-    double[] b3;
+    // False when the model's stats are identity (normalization folded into the weights)
+    boolean normalizeInputs;
+    boolean denormalizeOutputs;
 
     boolean weightsLoaded = false;
 
+    // Optional precomputed policy, null when there is no policy_grid.bin
+    PolicyGrid grid;
+
+    // Grid answers vs forward-pass fallbacks, for the whole battle
+    static int gridHits;
+    static int gridMisses;
+
+    // Cheap stand-in for the network, the behaviour DataCollectorBot recorded
+    CircleStrafePolicy teacher = new CircleStrafePolicy();
+    double[] teacherActions = new double[OUTPUT_NODES];
+    boolean teacherInControl = false;
+
+    // Optional settings next to the model, see guardEnabled()
+    static final String CONFIG_FILE = "bot.properties";
+
+    // Watches forward pass times for the whole battle, null when bot.properties turns it off
+    static LatencyGuard guard;
+
+    // Handler timing for the whole battle - written to tick_profile.txt at battle end
+    static TickProfiler profiler;
+    static int spanScan;
+    static int spanForward;
+    static int spanLoad;
+    static int spanGrid;
+
     public void run() {
         setAdjustGunForRobotTurn(true);
         setAdjustRadarForGunTurn(true);
 
-        // Try to load the brain
+        if (profiler == null) {
+            profiler = new TickProfiler(TickProfiler.DEFAULT_TURN_BUDGET_NANOS);
+            spanScan = profiler.addSpan("onScannedRobot");
+            spanForward = profiler.addSpan("forward_pass");
+            spanLoad = profiler.addSpan("load_model");
+            spanGrid = profiler.addSpan("grid_lookup");
+            gridHits = 0;
+            gridMisses = 0;
+            guard = guardEnabled() ? new LatencyGuard(profiler.turnBudgetNanos()) : null;
+            if (guard == null) out.println("Latency guard off (" + CONFIG_FILE + ")");
+        }
+        profiler.onRoundStarted();
+
+        // Try to load the brain (parsed once per battle, see ModelCache)
+        ModelCache.Entry model = null;
         try {
-            loadWeights("neural_weights.txt");
+            long loadStart = System.nanoTime();
+            int parsedBefore = ModelCache.loads();
+            model = loadWeights();
+            profiler.record(spanLoad, loadStart);
             weightsLoaded = true;
+            if (ModelCache.loads() != parsedBefore) {
+                String kernel = engine instanceof InferenceEngine ? ", " + ((InferenceEngine) engine).kernel().name() + " kernel" : "";
+                out.println((getRoundNum() == 0 ? "Loaded " : "Model file changed - reloaded ") + model.description + kernel);
+            }
         } catch (Exception e) {
             out.println("ERROR: Could not load weights! " + e.getMessage());
             e.printStackTrace();
         }
+        if (weightsLoaded) loadGrid(model);
 
         while (true) {
-            // If weights failed, just spin radar
+            // Keep scanning - onScannedRobot drives everything else
             turnRadarRight(360);
         }
     }
 
     public void onScannedRobot(ScannedRobotEvent e) {
-        if (!weightsLoaded) return;
-
-        // PREPARE INPUTS
-        // Has to match the order of the DataCollectorBot.java
-        double[] inputs = new double[INPUT_NODES];
-        inputs[0] = e.getDistance();
-        inputs[1] = e.getBearing();
-        inputs[2] = e.getVelocity();
-        inputs[3] = getEnergy();
-        inputs[4] = e.getEnergy();
-        inputs[5] = getDistanceToNearestWall();
-        inputs[6] = getBearingToNearestWall();
+        long scanStart = System.nanoTime();
+        double[] outputs = null;
+
+        if (weightsLoaded) {
+            // PREPARE INPUTS
+            // Shared with DataCollectorBot, so the order and math always match the training data
+            double[] raw = features.extract(this, e);
+
+            // PRECOMPUTED POLICY - already in output units
+            if (grid != null) {
+                long gridStart = System.nanoTime();
+                if (grid.lookup(raw, denormalized)) {
+                    outputs = denormalized;
+                    gridHits++;
+                } else {
+                    gridMisses++;
+                }
+                profiler.record(spanGrid, gridStart);
+            }
 
-        // NORMALIZE (Formula: (Val - Mean) / Std)
-        for (int i = 0; i < INPUT_NODES; i++) {
-            inputs[i] = (inputs[i] - inputMean[i]) / inputStd[i];
+            // THE NETWORK - unless it has recently been too slow for the turn budget
+            if (outputs == null && (guard == null || guard.allowModel())) {
+                long passStart = System.nanoTime();
+                outputs = exactPolicy(raw);
+                if (guard != null) guard.record(System.nanoTime() - passStart);
+            }
         }
 
-        // FORWARD PASS
-        // Layer 1
-        double[] h1 = denseLayer(inputs, w1, b1, true); // true = use ReLU
-        // Layer 2
-        double[] h2 = denseLayer(h1, w2, b2, true);
-        // Output Layer
-        double[] outputs = denseLayer(h2, w3, b3, false); // false = Linear
-
-        // DENORMALIZE OUTPUTS (reverse the normalization from training)
-        // Formula: Val = (NormalizedVal * Std) + Mean
-        for (int i = 0; i < OUTPUT_NODES; i++) {
-            outputs[i] = (outputs[i] * outputStd[i]) + outputMean[i];
+        // FALLBACK - no weights, or the guard tripped
+        teacherInControl = outputs == null;
+        if (teacherInControl) {
+            teacher.decide(e.getBearing(), e.getDistance(), teacherActions);
+            outputs = teacherActions;
         }
 
         // DECODE OUTPUTS -> ACTIONS
@@ -118,143 +175,182 @@ public class NeuralNetBot extends AdvancedRobot {
         // tracking without massive datasets)
         setTurnRadarRight(Utils.normalRelativeAngleDegrees(getHeading() + e.getBearing() - getRadarHeading()));
         setTurnGunRight(Utils.normalRelativeAngleDegrees(getHeading() + e.getBearing() - getGunHeading()));
-    }
 
-    // --- MATH HELPERS ---
+        profiler.record(spanScan, scanStart);
+    }
 
     /**
-     * Performs Matrix Dot Product + Bias + Activation
+     * Normalize, forward pass, denormalize
+     * @return the outputs in training units (engine buffer or denormalized, reused every scan)
      */
-    private double[] denseLayer(double[] input, double[][] weights, double[] biases, boolean relu) {
-        double[] output = new double[biases.length];
-
-        for (int i = 0; i < output.length; i++) {
-            double sum = 0;
-            // Dot Product
-            for (int j = 0; j < input.length; j++) {
-                sum += input[j] * weights[j][i];
+    private double[] exactPolicy(double[] raw) {
+        // NORMALIZE (Formula: (Val - Mean) / Std)
+        // straight into the engine's input buffer - unless ModelCompiler folded it into layer 1
+        double[] inputs = engine.input();
+        if (normalizeInputs) {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = (raw[i] - inputMean[i]) / inputStd[i];
             }
-            // Add Bias
-            sum += biases[i];
-            
-            // Activation Function
-            if (relu) {
-                output[i] = Math.max(0, sum); // ReLU
-            } else {
-                output[i] = sum; // Linear
+        } else {
+            System.arraycopy(raw, 0, inputs, 0, inputs.length);
+        }
+
+        // FORWARD PASS
+        long forwardStart = System.nanoTime();
+        // Whatever topology the model file describes
+        double[] net = engine.forward();
+        profiler.record(spanForward, forwardStart);
+
+        // DENORMALIZE OUTPUTS (reverse the normalization from training)
+        // Formula: Val = (NormalizedVal * Std) + Mean - unless folded into the last layer
+        if (!denormalizeOutputs) return net;
+        for (int i = 0; i < OUTPUT_NODES; i++) {
+            denormalized[i] = (net[i] * outputStd[i]) + outputMean[i];
+        }
+        return denormalized;
+    }
+
+    public void onSkippedTurn(SkippedTurnEvent e) {
+        if (profiler != null) profiler.onSkippedTurn();
+    }
+
+    public void onHitWall(HitWallEvent e) {
+        // Only the teacher reverses on walls - the network learned its own reaction
+        if (!teacherInControl) return;
+        teacher.reverse();
+        setBack(100);
+    }
+
+    public void onBattleEnded(BattleEndedEvent e) {
+        if (profiler == null) return;
+        try {
+            profiler.writeReport(getDataFile("tick_profile.txt"));
+            out.println("Tick profile saved - " + profiler.skippedTurns() + " skipped turns");
+            if (gridHits + gridMisses > 0) {
+                out.println("Policy grid answered " + gridHits + " scans, forward pass fallback " + gridMisses);
+            }
+            if (guard != null) {
+                out.println("Latency guard: " + guard.modelScans() + " forward passes, " + guard.fallbackScans()
+                        + " scans on the fallback, switched to it " + guard.switchesToFallback() + " times and back "
+                        + guard.switchesBack() + " times (last p99 " + guard.lastP99() / 1000 + " us)");
             }
+        } catch (IOException ex) {
+            out.println("ERROR: Could not write tick profile! " + ex.getMessage());
         }
-        return output;
+        profiler = null;
+        guard = null;
     }
 
+    // --- MODEL LOADING ---
+
     /**
-     * Parsers the simple CSV format
+     * Load the first model file present: neural_weights.set (ensemble or multi-head, see
+     * ModelSet), neural_weights.q8 (int8, see Quantizer), neural_weights.bin (see
+     * ModelConverter), neural_weights.txt. A .q8 or .bin converted from another version of
+     * neural_weights.txt is skipped (ModelCache.isStale), so retraining the text model is enough.
+     * Files are probed with new File(), not getDataFile(), which would create them empty.
+     * The parsed model is cached across rounds (ModelCache), so after round 0 this is a file
+     * read + CRC32 and a new engine, unless the file changed. Float models come back with
+     * their normalization folded into the weights (ModelCompiler).
+     * @return the cache entry, for the console
      */
-    private void loadWeights(String filename) throws IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(getDataFile(filename))));
-
-        // Read Input Normalization Stats
-        inputMean = parseLine(br.readLine());
-        inputStd = parseLine(br.readLine());
-
-        // Read Output Normalization Stats
-        outputMean = parseLine(br.readLine());
-        outputStd = parseLine(br.readLine());
-
-        // Initialize Arrays based on architecture
-        w1 = new double[INPUT_NODES][HIDDEN_NODES];
-        b1 = new double[HIDDEN_NODES];
-        w2 = new double[HIDDEN_NODES][HIDDEN_NODES];
-        b2 = new double[HIDDEN_NODES];
-        w3 = new double[HIDDEN_NODES][OUTPUT_NODES];
-        b3 = new double[OUTPUT_NODES];
-
-        // Load Layer 1
-        fillWeights(w1, br.readLine());
-        b1 = parseLine(br.readLine());
-
-        // Load Layer 2
-        fillWeights(w2, br.readLine());
-        b2 = parseLine(br.readLine());
-
-        // Load Layer 3
-        fillWeights(w3, br.readLine());
-        b3 = parseLine(br.readLine());
-
-        br.close();
-    }
-
-    private double[] parseLine(String line) {
-        StringTokenizer st = new StringTokenizer(line, ",");
-        double[] res = new double[st.countTokens()];
-        int i = 0;
-        while (st.hasMoreTokens()) {
-            res[i++] = Double.parseDouble(st.nextToken());
+    private ModelCache.Entry loadWeights() throws IOException {
+        File dir = getDataDirectory();
+        File text = new File(dir, NeuralModel.TEXT_FILE);
+        File file = new File(dir, ModelSet.FILE);
+        if (!present(file)) file = current(new File(dir, QuantizedModel.FILE), text);
+        if (!present(file)) file = current(new File(dir, NeuralModel.BINARY_FILE), text);
+        if (!present(file)) file = text;
+        ModelCache.Entry model = ModelCache.get(file);
+
+        int[] sizes = model.sizes;
+        if (sizes[sizes.length - 1] != OUTPUT_NODES) {
+            throw new IOException("Model has " + sizes[sizes.length - 1] + " outputs, the bot needs " + OUTPUT_NODES);
         }
-        return res;
+        features = FeatureExtractor.parse(model.features);
+        if (features.size() != sizes[0]) {
+            throw new IOException("Weights expect " + sizes[0] + " inputs but " + features.size() + " features are configured");
+        }
+        inputMean = model.inputMean;
+        inputStd = model.inputStd;
+        outputMean = model.outputMean;
+        outputStd = model.outputStd;
+        normalizeInputs = !ModelCompiler.isIdentity(inputMean, inputStd);
+        denormalizeOutputs = !ModelCompiler.isIdentity(outputMean, outputStd);
+        engine = model.newEngine();
+        return model;
     }
 
-    // Helper to map flattened weight list back to 2D array
-    private void fillWeights(double[][] matrix, String line) {
-        double[] flat = parseLine(line);
-        int k = 0;
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < matrix[0].length; j++) {
-                matrix[i][j] = flat[k++];
+    /**
+     * latency.guard from bot.properties - true (default) when the file is missing or unreadable
+     */
+    private boolean guardEnabled() {
+        File file = new File(getDataDirectory(), CONFIG_FILE);
+        if (!file.exists()) return true;
+        Properties props = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            props.load(in);
+        } catch (IOException e) {
+            // Unreadable config - keep the default
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
             }
         }
+        return !"false".equalsIgnoreCase(props.getProperty("latency.guard", "true").trim());
+    }
+
+    private static boolean present(File file) {
+        return file != null && file.exists() && file.length() > 0;
     }
 
     /**
-     * Calculate distance to the nearest wall
+     * The derived model file, or null if it is missing or out of date with the text model
      */
-    private double getDistanceToNearestWall() {
-        double x = getX();
-        double y = getY();
-        double width = getBattleFieldWidth();
-        double height = getBattleFieldHeight();
-
-        // Distance to each wall
-        double distLeft = x;
-        double distRight = width - x;
-        double distBottom = y;
-        double distTop = height - y;
-
-        // Return minimum distance
-        return Math.min(Math.min(distLeft, distRight), Math.min(distBottom, distTop));
+    private File current(File derived, File text) throws IOException {
+        if (!present(derived)) return null;
+        if (!ModelCache.isStale(derived, text)) return derived;
+        if (getRoundNum() == 0) {
+            out.println("Ignoring " + derived.getName() + " - converted from an older " + NeuralModel.TEXT_FILE
+                    + " (re-run the converter to use it again)");
+        }
+        return null;
     }
 
     /**
-     * Calculate bearing to the nearest wall (relative to current heading)
+     * Use policy_grid.bin if present and sampled from the model file just loaded (same CRC32),
+     * or from the text model that .q8 / .bin was converted from. Optional: any problem just
+     * leaves the bot on the forward pass.
      */
-    private double getBearingToNearestWall() {
-        double x = getX();
-        double y = getY();
-        double width = getBattleFieldWidth();
-        double height = getBattleFieldHeight();
-
-        // Distance to each wall
-        double distLeft = x;
-        double distRight = width - x;
-        double distBottom = y;
-        double distTop = height - y;
-
-        // Find which wall is nearest
-        double minDist = Math.min(Math.min(distLeft, distRight), Math.min(distBottom, distTop));
-
-        // Calculate absolute bearing to nearest wall
-        double absBearing;
-        if (minDist == distLeft) {
-            absBearing = 270;  // West
-        } else if (minDist == distRight) {
-            absBearing = 90;   // East
-        } else if (minDist == distBottom) {
-            absBearing = 180;  // South
-        } else {
-            absBearing = 0;    // North
+    private void loadGrid(ModelCache.Entry model) {
+        File file = new File(getDataDirectory(), PolicyGrid.FILE);
+        if (!present(file)) return;
+        try {
+            PolicyGrid g = PolicyGrid.get(file);
+            if (!Arrays.equals(FeatureExtractor.parse(g.features()).columnNames(), features.columnNames()) || g.outputs() != OUTPUT_NODES) {
+                out.println("Ignoring " + PolicyGrid.FILE + " - built for another model");
+                return;
+            }
+            if (g.modelCrc32() != model.crc32
+                    && (g.modelCrc32() == PolicyGrid.UNKNOWN_MODEL || g.modelCrc32() != ModelCache.sourceCrc32(new File(model.path)))) {
+                if (getRoundNum() == 0) {
+                    out.println("Ignoring " + PolicyGrid.FILE + " - sampled from model crc32 "
+                            + (g.modelCrc32() == PolicyGrid.UNKNOWN_MODEL ? "unknown" : Long.toHexString(g.modelCrc32()))
+                            + ", loaded " + Long.toHexString(model.crc32) + " - rebuild it with PolicyGridBuilder");
+                }
+                return;
+            }
+            // Piecewise linear: d + 1 reads per lookup instead of 2^d, see PolicyGridBenchmark
+            g.setInterpolation(PolicyGrid.Interpolation.SIMPLEX);
+            grid = g;
+            if (getRoundNum() == 0) out.println("Using " + PolicyGrid.FILE + " (" + g.byteSize() + " bytes)");
+        } catch (IOException ex) {
+            out.println("ERROR: Could not load policy grid! " + ex.getMessage());
         }
-
-        // Convert to relative bearing
-        return Utils.normalRelativeAngleDegrees(absBearing - getHeading());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,221 @@
+package mybots;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * OnlineTrainer
+ * Refreshes a model after a collection session without retraining on everything collected so far:
+ *   - only the manifest's new segments are loaded (a segment is new until its file name and
+ *     CRC32 are recorded in training_state.properties in the model directory)
+ *   - training continues from the model already there (neural_weights.bin, else .txt), keeping
+ *     its features and normalization; with no model yet it trains one from scratch
+ *   - a replay buffer (replay_buffer.bin, a double-precision RCDS file) mixes a bounded uniform
+ *     sample of every earlier row into the new ones, so the model does not forget old opponents
+ * After training, the new rows are offered to the replay reservoir, which continues from its
+ * saved sample and seen count, so it stays uniform over all rows ever trained on.
+ *
+ * Validation is the last --validation fraction of the new rows only; training sees the replay
+ * sample and the rest of the new rows. Holding out a fraction of the combined set instead would,
+ * with a full replay buffer, hold out most or all of a small session.
+ *
+ * Usage: java -cp robots;libs/robocode.jar mybots.OnlineTrainer <training_data.manifest>
+ *            [--model-dir dir] [--epochs 10 (100 from scratch)] [--batch 32] [--lr 0.001]
+ *            [--replay 5000] [--validation 0.2] [--seed 1] [--threads N]
+ *            [--hidden 20:relu,20:relu] [--output linear]   (from scratch only)
+ */
+public class OnlineTrainer {
+
+    public static final String STATE_FILE = "training_state.properties";
+    public static final String REPLAY_FILE = "replay_buffer.bin";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.OnlineTrainer <training_data.manifest> [--model-dir dir] [--epochs 10]"
+                    + " [--batch 32] [--lr 0.001] [--replay 5000] [--validation 0.2] [--seed 1] [--threads N]"
+                    + " [--hidden 20:relu,20:relu] [--output linear]");
+            return;
+        }
+        File manifest = new File(args[0]);
+        File modelDir = new File(".");
+        int epochs = -1;
+        int batch = 32;
+        double lr = 0.001;
+        int replay = 5000;
+        double validation = 0.2;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String hidden = "20:relu,20:relu";
+        String output = "linear";
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("--model-dir")) modelDir = new File(value);
+            else if (args[i].equals("--epochs")) epochs = Integer.parseInt(value);
+            else if (args[i].equals("--batch")) batch = Integer.parseInt(value);
+            else if (args[i].equals("--lr")) lr = Double.parseDouble(value);
+            else if (args[i].equals("--replay")) replay = Integer.parseInt(value);
+            else if (args[i].equals("--validation")) validation = Double.parseDouble(value);
+            else if (args[i].equals("--seed")) seed = Long.parseLong(value);
+            else if (args[i].equals("--threads")) threads = Integer.parseInt(value);
+            else if (args[i].equals("--hidden")) hidden = value;
+            else if (args[i].equals("--output")) output = value;
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        // Which segments have not been trained on yet
+        Properties manifestProps = DatasetLoader.readManifest(manifest);
+        Properties state = readState(new File(modelDir, STATE_FILE));
+        int segments = Integer.parseInt(manifestProps.getProperty("dataset.segments", "0"));
+        List<Integer> fresh = new ArrayList<Integer>();
+        for (int s = 0; s < segments; s++) {
+            String prefix = "segment." + s + ".";
+            String crc = manifestProps.getProperty(prefix + "crc32");
+            if (crc == null || !crc.equals(state.getProperty("trained." + manifestProps.getProperty(prefix + "file")))) {
+                fresh.add(s);
+            }
+        }
+        if (fresh.isEmpty()) {
+            System.out.println("All " + segments + " segments of " + manifest + " are already trained on - model is up to date");
+            return;
+        }
+        int[] chosen = new int[fresh.size()];
+        for (int i = 0; i < chosen.length; i++) chosen[i] = fresh.get(i);
+        Dataset newRows = DatasetLoader.loadManifest(manifest, chosen, true);
+        System.out.println("Loaded " + newRows.rows + " new rows from " + chosen.length + " of " + segments + " segments");
+
+        // Replay sample of everything trained on before
+        File replayFile = new File(modelDir, REPLAY_FILE);
+        Dataset old = null;
+        long seen = Long.parseLong(state.getProperty("replay.seen", "0"));
+        if (replayFile.exists()) {
+            old = DatasetLoader.load(replayFile);
+            if (!Arrays.equals(old.columnNames, newRows.columnNames)) {
+                System.out.println("Ignoring " + replayFile + ": its columns differ from the new segments'");
+                old = null;
+                seen = 0;
+            } else {
+                System.out.println("Replaying " + old.rows + " earlier rows (sampled from " + seen + ")");
+            }
+        }
+        // New rows last, so the held-out tail comes from them alone
+        Dataset all = old != null && old.rows > 0 ? Dataset.concat(new Dataset[] {old, newRows}) : newRows;
+        if (validation < 0 || validation >= 1) {
+            throw new IllegalArgumentException("Validation fraction must be in [0, 1): " + validation);
+        }
+        int validationRows = Math.min((int) Math.round(newRows.rows * validation), all.rows - 1);
+
+        NeuralModel start = readExisting(modelDir);
+        TrainingSet data = TrainingSet.split(all, validationRows, start);
+        System.out.println("Training on " + data.rows + " rows (" + data.trainRows + " train, "
+                + data.validationRows() + " validation)");
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        Random rnd = new Random(seed);
+        MlpTrainer trainer;
+        if (start != null) {
+            trainer = new MlpTrainer(start.sizes, start.activations, start.params, pool);
+            if (epochs < 0) epochs = 10;
+            System.out.println("Warm start from " + NeuralModel.describe(start.sizes, start.activations)
+                    + ", val_loss " + String.format(Locale.ROOT, "%.4f", trainer.validationLoss(data)));
+        } else {
+            int[] sizes = MlpTrainer.layerSizes(data.inputs, hidden, data.outputs);
+            Activation[] acts = MlpTrainer.layerActivations(hidden, output);
+            trainer = new MlpTrainer(sizes, acts, rnd, pool);
+            if (epochs < 0) epochs = 100;
+            System.out.println("No model in " + modelDir + " - training " + NeuralModel.describe(sizes, acts) + " from scratch");
+        }
+        trainer.setLearningRate(lr);
+        try {
+            trainer.fit(data, epochs, batch, rnd);
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+        MlpTrainer.writeModel(trainer.toModel(data), modelDir);
+
+        // Fold the new rows into the replay sample, then record what has been trained on
+        Reservoir reservoir = new Reservoir(replay, newRows.columns, seed ^ seen);
+        if (old != null) reservoir.restore(old.data, old.rows, seen);
+        double[] row = new double[newRows.columns];
+        for (int r = 0; r < newRows.rows; r++) {
+            System.arraycopy(newRows.data, r * newRows.columns, row, 0, row.length);
+            reservoir.offer(row);
+        }
+        long total = reservoir.seen();
+        int kept = writeReplay(reservoir, newRows.columnNames, replayFile);
+        System.out.println("Replay buffer: " + kept + " rows sampled from " + total);
+
+        for (int s : chosen) {
+            String prefix = "segment." + s + ".";
+            String crc = manifestProps.getProperty(prefix + "crc32");
+            if (crc != null) state.setProperty("trained." + manifestProps.getProperty(prefix + "file"), crc);
+        }
+        state.setProperty("replay.seen", Long.toString(total));
+        writeState(state, new File(modelDir, STATE_FILE));
+    }
+
+    /**
+     * The model to continue from: neural_weights.bin unless it is older than neural_weights.txt
+     * (see ModelCache.isStale), else neural_weights.txt, else null
+     */
+    private static NeuralModel readExisting(File dir) throws IOException {
+        File binary = new File(dir, NeuralModel.BINARY_FILE);
+        File text = new File(dir, NeuralModel.TEXT_FILE);
+        if (binary.exists()) {
+            if (!ModelCache.isStale(binary, text)) return NeuralModel.readBinary(binary);
+            System.out.println("Ignoring " + binary + " - converted from an older " + NeuralModel.TEXT_FILE);
+        }
+        if (text.exists()) return NeuralModel.readText(text);
+        return null;
+    }
+
+    private static int writeReplay(Reservoir reservoir, String[] columns, File file) throws IOException {
+        BinarySampleSink sink = new BinarySampleSink(new BufferedOutputStream(new FileOutputStream(file)), columns, false);
+        int n = reservoir.drainTo(sink, new double[columns.length]);
+        sink.close();
+        if (sink.checkError()) throw new IOException("Could not write " + file);
+        return n;
+    }
+
+    private static Properties readState(File file) throws IOException {
+        Properties props = new Properties();
+        if (!file.exists()) return props;
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        return props;
+    }
+
+    private static void writeState(Properties state, File file) throws IOException {
+        // Sorted, so the file diffs cleanly between sessions
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (String key : state.stringPropertyNames()) sorted.put(key, state.getProperty(key));
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            sb.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package mybots;
+
+import java.util.Arrays;
+
+/**
+ * OpponentTable
+ * Gives every opponent a small int id (0, 1, 2, ... in the order we first scan them) and keeps
+ * per-opponent state in primitive arrays indexed by that id. In melee this keeps one enemy's
+ * scans from being mixed up with another's.
+ *
+ * Looking up a name is a short linear scan (hash first, then equals) - battles have a handful of
+ * robots, so this beats a HashMap and never allocates. Arrays only grow when a new name shows up.
+ */
+public class OpponentTable {
+
+    private String[] names = new String[8];
+    private int[] hashes = new int[8];
+    private long[] lastScanTime = new long[8];
+    private int count = 0;
+
+    /**
+     * Id for this robot name, assigning the next free id the first time we see it
+     */
+    public int idOf(String name) {
+        int h = name.hashCode();
+        for (int i = 0; i < count; i++) {
+            if (hashes[i] == h && names[i].equals(name)) return i;
+        }
+        if (count == names.length) {
+            int cap = count * 2;
+            names = Arrays.copyOf(names, cap);
+            hashes = Arrays.copyOf(hashes, cap);
+            lastScanTime = Arrays.copyOf(lastScanTime, cap);
+        }
+        names[count] = name;
+        hashes[count] = h;
+        lastScanTime[count] = -1;
+        return count++;
+    }
+
+    /**
+     * Forget per-round state (the clock restarts every round). Ids stay the same.
+     */
+    public void resetRound() {
+        Arrays.fill(lastScanTime, 0, count, -1);
+    }
+
+    /**
+     * Time of the previous scan of this opponent this round, or -1 if not scanned yet
+     */
+    public long lastScanTime(int id) {
+        return lastScanTime[id];
+    }
+
+    public void setLastScanTime(int id, long time) {
+        lastScanTime[id] = time;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,297 @@
+package mybots;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * PolicyGrid
+ * A precomputed policy: the model's (denormalized) outputs sampled on a regular grid over the
+ * raw feature space. Two ways to interpolate inside a cell:
+ *   MULTILINEAR  blends all 2^d corners of the cell (128 for 7 features) - smoothest
+ *   SIMPLEX      splits the cell into simplices (Kuhn triangulation) and blends the d + 1
+ *                corners of the one containing the point - piecewise linear, far fewer reads
+ * Inputs outside the grid are reported as misses so the caller can fall back to the exact
+ * forward pass. Built offline by PolicyGridBuilder; lookup() never allocates.
+ *
+ * The grid records the CRC32 of the model file it was sampled from (as ModelCache computes it),
+ * so a retrained model with the same features is not silently answered by a stale grid.
+ * Version 1 files have no CRC and read as UNKNOWN_MODEL.
+ *
+ * File layout (policy_grid.bin, all little-endian):
+ *   0  int    magic "RCPG"
+ *   4  short  format version
+ *   6  short  dimensions d
+ *   8  int    outputs k
+ *   12 long   CRC32 of the source model file (version 2+)
+ *   20 int    points per dimension[d]
+ *   .. double low[d], high[d]      grid bounds per dimension, in raw feature units
+ *   .. short  features spec length, UTF-8 bytes
+ *   .. float  values, row-major over the grid (last dimension fastest), k per point
+ */
+public class PolicyGrid {
+
+    public static final String FILE = "policy_grid.bin";
+    public static final int MAGIC = 0x47504352; // "RCPG" when read as little-endian bytes
+    public static final int VERSION = 2;
+    public static final long UNKNOWN_MODEL = -1;
+
+    public enum Interpolation { MULTILINEAR, SIMPLEX }
+
+    private final int dims;
+    private final int outputs;
+    private final int[] points;
+    private final double[] low;
+    private final double[] high;
+    private final String features;
+    private final long modelCrc32;
+    private final float[] values;
+
+    // Derived lookup tables
+    private final double[] invStep;
+    private final int[] stride;          // in grid points
+    private final int[] cornerOffset;    // grid point offset of each of the 2^d cell corners
+
+    private Interpolation interpolation = Interpolation.MULTILINEAR;
+
+    // Scratch, reused by lookup()
+    private final double[] frac;
+    private final double[] corners;
+    private final int[] order;
+
+    /**
+     * @param modelCrc32 ModelCache.crc32 of the model file the values came from, or UNKNOWN_MODEL
+     */
+    public PolicyGrid(int[] points, double[] low, double[] high, int outputs, float[] values, String features,
+                      long modelCrc32) {
+        this.dims = points.length;
+        this.outputs = outputs;
+        this.points = points.clone();
+        this.low = low.clone();
+        this.high = high.clone();
+        this.features = features;
+        this.modelCrc32 = modelCrc32;
+        this.values = values;
+        if (dims > 16) throw new IllegalArgumentException("Too many dimensions for a grid: " + dims);
+        if (values.length != (long) cellCount(points) * outputs) {
+            throw new IllegalArgumentException("Expected " + (long) cellCount(points) * outputs + " values, got " + values.length);
+        }
+
+        invStep = new double[dims];
+        stride = new int[dims];
+        int s = 1;
+        for (int j = dims - 1; j >= 0; j--) {
+            if (points[j] < 2 || !(high[j] > low[j])) {
+                throw new IllegalArgumentException("Dimension " + j + " needs at least 2 points and high > low");
+            }
+            invStep[j] = (points[j] - 1) / (high[j] - low[j]);
+            stride[j] = s;
+            s *= points[j];
+        }
+        cornerOffset = new int[1 << dims];
+        for (int c = 0; c < cornerOffset.length; c++) {
+            int off = 0;
+            for (int j = 0; j < dims; j++) {
+                if ((c >> j & 1) != 0) off += stride[j];
+            }
+            cornerOffset[c] = off;
+        }
+        frac = new double[dims];
+        corners = new double[cornerOffset.length * outputs];
+        order = new int[dims];
+    }
+
+    public void setInterpolation(Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    public Interpolation interpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Number of grid points, or -1 if it does not fit an int
+     */
+    public static int cellCount(int[] points) {
+        long n = 1;
+        for (int p : points) {
+            n *= p;
+            if (n > Integer.MAX_VALUE) return -1;
+        }
+        return (int) n;
+    }
+
+    /**
+     * Grid point coordinate along one dimension
+     */
+    public double coordinate(int dim, int index) {
+        return low[dim] + index * (high[dim] - low[dim]) / (points[dim] - 1);
+    }
+
+    /**
+     * Interpolate the policy at x (raw feature values)
+     * @return false, leaving out untouched, if x is outside the grid
+     */
+    public boolean lookup(double[] x, double[] out) {
+        int base = 0;
+        for (int j = 0; j < dims; j++) {
+            double t = (x[j] - low[j]) * invStep[j];
+            if (!(t >= 0 && t <= points[j] - 1)) return false;  // also rejects NaN
+            int i = (int) t;
+            if (i > points[j] - 2) i = points[j] - 2;
+            frac[j] = t - i;
+            base += i * stride[j];
+        }
+        if (interpolation == Interpolation.SIMPLEX) {
+            simplex(base, out);
+            return true;
+        }
+
+        // Gather the 2^d corners, then collapse one dimension at a time (highest bit first)
+        int k = outputs;
+        int n = cornerOffset.length;
+        for (int c = 0; c < n; c++) {
+            int src = (base + cornerOffset[c]) * k;
+            for (int o = 0; o < k; o++) {
+                corners[c * k + o] = values[src + o];
+            }
+        }
+        for (int j = dims - 1; j >= 0; j--) {
+            n >>= 1;
+            double f = frac[j];
+            for (int c = 0; c < n * k; c++) {
+                double a = corners[c];
+                corners[c] = a + (corners[c + n * k] - a) * f;
+            }
+        }
+        System.arraycopy(corners, 0, out, 0, k);
+        return true;
+    }
+
+    /**
+     * Walk from the cell's low corner towards the high corner, one dimension at a time in order
+     * of decreasing fraction; the d + 1 corners visited span the simplex holding the point.
+     * Weights: 1 - f(first), f(i) - f(i + 1) ..., f(last).
+     */
+    private void simplex(int base, double[] out) {
+        for (int j = 0; j < dims; j++) {
+            // Insertion sort, largest fraction first
+            int i = j;
+            while (i > 0 && frac[order[i - 1]] < frac[j]) {
+                order[i] = order[i - 1];
+                i--;
+            }
+            order[i] = j;
+        }
+        int k = outputs;
+        int point = base;
+        double w = 1 - frac[order[0]];
+        for (int o = 0; o < k; o++) out[o] = w * values[point * k + o];
+        for (int i = 0; i < dims; i++) {
+            int j = order[i];
+            point += stride[j];
+            w = i + 1 < dims ? frac[j] - frac[order[i + 1]] : frac[j];
+            for (int o = 0; o < k; o++) out[o] += w * values[point * k + o];
+        }
+    }
+
+    public int dimensions() {
+        return dims;
+    }
+
+    public int outputs() {
+        return outputs;
+    }
+
+    public String features() {
+        return features;
+    }
+
+    public long modelCrc32() {
+        return modelCrc32;
+    }
+
+    /**
+     * Memory taken by the values
+     */
+    public long valueBytes() {
+        return 4L * values.length;
+    }
+
+    public int byteSize() {
+        return 20 + 4 * dims + 16 * dims + 2 + features.getBytes(StandardCharsets.UTF_8).length + 4 * values.length;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.putShort((short) dims);
+        buf.putInt(outputs);
+        buf.putLong(modelCrc32);
+        for (int p : points) buf.putInt(p);
+        for (double v : low) buf.putDouble(v);
+        for (double v : high) buf.putDouble(v);
+        byte[] spec = features.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) spec.length);
+        buf.put(spec);
+        buf.asFloatBuffer().put(values);
+        out.write(buf.array());
+    }
+
+    public static PolicyGrid read(ByteBuffer bytes) throws IOException {
+        ByteBuffer buf = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buf.getInt() != MAGIC) throw new IOException("Not a policy grid file");
+            int version = buf.getShort();
+            if (version != 1 && version != VERSION) throw new IOException("Unsupported policy grid version " + version);
+            int dims = buf.getShort();
+            int outputs = buf.getInt();
+            long modelCrc32 = version >= 2 ? buf.getLong() : UNKNOWN_MODEL;
+            int[] points = new int[dims];
+            for (int j = 0; j < dims; j++) points[j] = buf.getInt();
+            double[] low = new double[dims];
+            double[] high = new double[dims];
+            for (int j = 0; j < dims; j++) low[j] = buf.getDouble();
+            for (int j = 0; j < dims; j++) high[j] = buf.getDouble();
+            byte[] spec = new byte[buf.getShort()];
+            buf.get(spec);
+            int cells = cellCount(points);
+            if (cells < 0 || buf.remaining() != 4L * cells * outputs) {
+                throw new IOException("Policy grid size does not match its header");
+            }
+            float[] values = new float[cells * outputs];
+            buf.asFloatBuffer().get(values);
+            return new PolicyGrid(points, low, high, outputs, values, new String(spec, StandardCharsets.UTF_8), modelCrc32);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IllegalArgumentException from the constructor
+            throw new IOException("Corrupt policy grid file: " + e, e);
+        }
+    }
+
+    // --- Cross-round cache, same idea as ModelCache ---
+
+    private static PolicyGrid cached;
+    private static String cachedPath;
+    private static long cachedCrc;
+
+    /**
+     * The grid in this file, parsed again only when its contents changed. The returned grid has
+     * lookup scratch buffers, so it must only be used by one robot thread at a time.
+     */
+    public static synchronized PolicyGrid get(File file) throws IOException {
+        byte[] bytes = ModelCache.readAll(file);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        if (cached == null || !file.getPath().equals(cachedPath) || crc.getValue() != cachedCrc) {
+            cached = read(ByteBuffer.wrap(bytes));
+            cachedPath = file.getPath();
+            cachedCrc = crc.getValue();
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,142 @@
+package mybots;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * PolicyGridBenchmark
+ * Offline error-vs-speed comparison of PolicyGrid against the exact forward pass at several
+ * grid resolutions. Queries are the rows of a logged dataset (the states the robot actually
+ * sees); for each resolution and interpolation mode it reports memory, how many queries fall
+ * inside the grid, the interpolation error per output (RMSE and max, in output units, over the
+ * covered queries) and ns per query next to ns per exact forward pass (normalize + forward +
+ * denormalize).
+ *
+ * Usage: java -cp robots;libs/robocode.jar mybots.PolicyGridBenchmark <model .txt/.bin> <dataset or manifest> [points ...]
+ */
+public class PolicyGridBenchmark {
+
+    private static final int[] DEFAULT_POINTS = {2, 3, 4, 5, 6};
+    private static final int QUERIES = 4096;
+    private static final int ROUNDS = 40;
+
+    // Consumed result, so the JIT cannot drop the work
+    private static double sink;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java mybots.PolicyGridBenchmark <model .txt/.bin> <dataset or manifest> [points ...]");
+            return;
+        }
+        NeuralModel model = PolicyGridBuilder.readModel(new File(args[0]));
+        Dataset data = PolicyGridBuilder.readDataset(new File(args[1]));
+        int[] resolutions = DEFAULT_POINTS;
+        if (args.length > 2) {
+            resolutions = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) resolutions[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        int dims = model.inputSize();
+        int k = model.outputSize();
+        String[] columns = FeatureExtractor.parse(model.features).columnNames();
+        int[] columnIndex = new int[dims];
+        for (int j = 0; j < dims; j++) {
+            columnIndex[j] = data.columnIndex(columns[j]);
+            if (columnIndex[j] < 0) throw new IllegalArgumentException("Dataset has no column " + columns[j]);
+        }
+
+        // Query set: dataset rows in random order, repeated to QUERIES if the dataset is small
+        Random rnd = new Random(1);
+        double[][] queries = new double[QUERIES][dims];
+        for (int q = 0; q < QUERIES; q++) {
+            int r = rnd.nextInt(data.rows);
+            for (int j = 0; j < dims; j++) queries[q][j] = data.get(r, columnIndex[j]);
+        }
+
+        // Exact answers and exact timing
+        InferenceEngine engine = model.newEngine();
+        double[][] exact = new double[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) exact[q] = exactForward(model, engine, queries[q], new double[k]);
+        double[] scratch = new double[k];
+        double exactNs = time(model, engine, null, queries, scratch);
+        System.out.println(String.format(Locale.ROOT, "Exact forward pass: %.1f ns/query  (%s)",
+                exactNs, NeuralModel.describe(model.sizes, model.activations)));
+
+        double[][] bounds = PolicyGridBuilder.bounds(model, data);
+        System.out.println(String.format(Locale.ROOT, "%6s %-11s %12s %9s %10s   %s", "points", "mode", "bytes", "covered", "ns/query",
+                "per output: rmse / max abs err"));
+        for (int n : resolutions) {
+            int[] points = new int[dims];
+            Arrays.fill(points, n);
+            int cells = PolicyGrid.cellCount(points);
+            if (cells < 0 || (long) cells * k > Integer.MAX_VALUE / 4) {
+                System.out.println(String.format(Locale.ROOT, "%6d  too large", n));
+                continue;
+            }
+            PolicyGrid grid = PolicyGridBuilder.build(model, PolicyGrid.UNKNOWN_MODEL, points, bounds[0], bounds[1]);
+            for (PolicyGrid.Interpolation mode : PolicyGrid.Interpolation.values()) {
+                grid.setInterpolation(mode);
+                report(n, grid, model, engine, queries, exact);
+            }
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    private static void report(int n, PolicyGrid grid, NeuralModel model, InferenceEngine engine,
+                               double[][] queries, double[][] exact) {
+        int k = model.outputSize();
+        double[] scratch = new double[k];
+        int covered = 0;
+        double[] sumSq = new double[k];
+        double[] maxErr = new double[k];
+        for (int q = 0; q < QUERIES; q++) {
+            if (!grid.lookup(queries[q], scratch)) continue;
+            covered++;
+            for (int o = 0; o < k; o++) {
+                double err = Math.abs(scratch[o] - exact[q][o]);
+                sumSq[o] += err * err;
+                maxErr[o] = Math.max(maxErr[o], err);
+            }
+        }
+        // Timed with the exact fallback for misses, as the robot would run it
+        double gridNs = time(model, engine, grid, queries, scratch);
+
+        StringBuilder errors = new StringBuilder();
+        for (int o = 0; o < k; o++) {
+            errors.append(String.format(Locale.ROOT, "  %.3f / %.3f",
+                    covered == 0 ? 0 : Math.sqrt(sumSq[o] / covered), maxErr[o]));
+        }
+        System.out.println(String.format(Locale.ROOT, "%6d %-11s %12d %8.1f%% %10.1f %s",
+                n, grid.interpolation().name().toLowerCase(Locale.ROOT), grid.valueBytes(),
+                100.0 * covered / QUERIES, gridNs, errors));
+    }
+
+    private static double[] exactForward(NeuralModel model, InferenceEngine engine, double[] raw, double[] out) {
+        double[] x = engine.input();
+        for (int j = 0; j < x.length; j++) x[j] = (raw[j] - model.inputMean[j]) / model.inputStd[j];
+        double[] y = engine.forward();
+        for (int o = 0; o < out.length; o++) out[o] = y[o] * model.outputStd[o] + model.outputMean[o];
+        return out;
+    }
+
+    /**
+     * Median ns per query over ROUNDS passes; grid == null times the exact path only
+     */
+    private static double time(NeuralModel model, InferenceEngine engine, PolicyGrid grid, double[][] queries, double[] out) {
+        double[] ns = new double[ROUNDS];
+        for (int r = 0; r < ROUNDS * 2; r++) {
+            long t0 = System.nanoTime();
+            for (double[] q : queries) {
+                if (grid == null || !grid.lookup(q, out)) exactForward(model, engine, q, out);
+                sink += out[0];
+            }
+            // First half is warmup
+            if (r >= ROUNDS) ns[r - ROUNDS] = (System.nanoTime() - t0) / (double) queries.length;
+        }
+        Arrays.sort(ns);
+        return ns[ROUNDS / 2];
+    }
+}
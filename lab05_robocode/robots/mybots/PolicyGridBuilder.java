@@ -0,0 +1,144 @@
+package mybots;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * PolicyGridBuilder
+ * Offline tool: samples a model on a regular grid over its inputs and writes policy_grid.bin
+ * for NeuralNetBot. Grid bounds per feature are the 0.5th-99.5th percentiles of a logged
+ * dataset when one is given (so outliers do not stretch the grid), otherwise mean +- 2.5 std
+ * from the model's normalization stats. The same number of points is used on every axis, the
+ * most that fits the memory cap. The grid records the model file's CRC32, so build it from the
+ * file NeuralNetBot loads, or from the neural_weights.txt its .q8 / .bin was converted from -
+ * NeuralNetBot ignores a grid sampled from any other file.
+ *
+ * Usage: java -cp robots;libs/robocode.jar mybots.PolicyGridBuilder <model .txt/.bin>
+ *            [--data <dataset or manifest>] [--points N | --max-bytes N] [--out policy_grid.bin]
+ */
+public class PolicyGridBuilder {
+
+    public static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024;
+    private static final double TAIL_PERCENT = 0.5;
+
+    /**
+     * Evaluate the model at every grid point
+     * @param modelCrc32 ModelCache.crc32 of the model's file, or PolicyGrid.UNKNOWN_MODEL
+     */
+    public static PolicyGrid build(NeuralModel model, long modelCrc32, int[] points, double[] low, double[] high) {
+        NeuralModel compiled = ModelCompiler.fuseNormalization(model);
+        InferenceEngine engine = compiled.newEngine();
+        int dims = points.length;
+        int k = model.outputSize();
+        int cells = PolicyGrid.cellCount(points);
+        if (cells < 0 || (long) cells * k > Integer.MAX_VALUE) throw new IllegalArgumentException("Grid too large");
+        float[] values = new float[cells * k];
+
+        int[] index = new int[dims];
+        double[] x = engine.input();
+        for (int cell = 0; cell < cells; cell++) {
+            for (int j = 0; j < dims; j++) {
+                double raw = low[j] + index[j] * (high[j] - low[j]) / (points[j] - 1);
+                x[j] = (raw - compiled.inputMean[j]) / compiled.inputStd[j];
+            }
+            double[] y = engine.forward();
+            for (int o = 0; o < k; o++) {
+                values[cell * k + o] = (float) (y[o] * compiled.outputStd[o] + compiled.outputMean[o]);
+            }
+            // Next grid point, last dimension fastest
+            for (int j = dims - 1; j >= 0; j--) {
+                if (++index[j] < points[j]) break;
+                index[j] = 0;
+            }
+        }
+        return new PolicyGrid(points, low, high, k, values, model.features, modelCrc32);
+    }
+
+    /**
+     * Most points per axis (at least 2) whose grid of float values fits in maxBytes
+     */
+    public static int pointsForBudget(int dims, int outputs, long maxBytes) {
+        int n = 2;
+        while (Math.pow(n + 1, dims) * outputs * 4 <= maxBytes) n++;
+        return n;
+    }
+
+    /**
+     * Grid bounds [low, high] per model input, from a dataset's percentiles or the model's stats
+     */
+    public static double[][] bounds(NeuralModel model, Dataset data) {
+        int dims = model.inputSize();
+        double[] low = new double[dims];
+        double[] high = new double[dims];
+        String[] columns = FeatureExtractor.parse(model.features).columnNames();
+        for (int j = 0; j < dims; j++) {
+            int c = data == null ? -1 : data.columnIndex(columns[j]);
+            if (c >= 0 && data.rows > 1) {
+                double[] v = new double[data.rows];
+                for (int r = 0; r < data.rows; r++) v[r] = data.get(r, c);
+                Arrays.sort(v);
+                low[j] = v[(int) Math.floor((v.length - 1) * TAIL_PERCENT / 100)];
+                high[j] = v[(int) Math.ceil((v.length - 1) * (100 - TAIL_PERCENT) / 100)];
+            } else {
+                low[j] = model.inputMean[j] - 2.5 * model.inputStd[j];
+                high[j] = model.inputMean[j] + 2.5 * model.inputStd[j];
+            }
+            if (!(high[j] > low[j])) {
+                // Constant column - any small range will do
+                high[j] = low[j] + 1;
+            }
+        }
+        return new double[][] {low, high};
+    }
+
+    static NeuralModel readModel(File file) throws IOException {
+        return file.getName().endsWith(".bin") ? NeuralModel.readBinary(file) : NeuralModel.readText(file);
+    }
+
+    static Dataset readDataset(File file) throws IOException {
+        return file.getName().endsWith(".manifest")
+                ? DatasetLoader.loadManifest(file, null, false) : DatasetLoader.load(file);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.PolicyGridBuilder <model .txt/.bin> [--data <dataset>] [--points N | --max-bytes N] [--out file]");
+            return;
+        }
+        File modelFile = new File(args[0]);
+        File dataFile = null;
+        File outFile = new File(modelFile.getAbsoluteFile().getParentFile(), PolicyGrid.FILE);
+        int pointsPerAxis = 0;
+        long maxBytes = DEFAULT_MAX_BYTES;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--data")) dataFile = new File(args[i + 1]);
+            else if (args[i].equals("--points")) pointsPerAxis = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--max-bytes")) maxBytes = Long.parseLong(args[i + 1]);
+            else if (args[i].equals("--out")) outFile = new File(args[i + 1]);
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        NeuralModel model = readModel(modelFile);
+        Dataset data = dataFile == null ? null : readDataset(dataFile);
+        if (pointsPerAxis == 0) pointsPerAxis = pointsForBudget(model.inputSize(), model.outputSize(), maxBytes);
+        int[] points = new int[model.inputSize()];
+        Arrays.fill(points, pointsPerAxis);
+        double[][] b = bounds(model, data);
+
+        long start = System.nanoTime();
+        PolicyGrid grid = build(model, ModelCache.crc32(modelFile), points, b[0], b[1]);
+        long ms = (System.nanoTime() - start) / 1000000;
+
+        OutputStream out = new FileOutputStream(outFile);
+        try {
+            grid.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + outFile + ": " + pointsPerAxis + "^" + model.inputSize() + " points, "
+                + grid.byteSize() + " bytes, built in " + ms + " ms");
+    }
+}
@@ -0,0 +1,61 @@
+package mybots;
+
+/**
+ * QuantizedEngine
+ * Forward pass over a QuantizedModel. Activations stay double; each output is the dot product
+ * of the input with the int8 weight row, multiplied by the row's scale once at the end, then
+ * bias and activation. Buffers are preallocated, nothing is allocated per call.
+ *
+ * Not thread safe - one engine per robot.
+ */
+public class QuantizedEngine implements ForwardPass {
+
+    private final QuantizedModel model;
+    private final double[][] buffers;   // buffers[0] = input, buffers[l + 1] = output of layer l
+
+    public QuantizedEngine(QuantizedModel model) {
+        this.model = model;
+        buffers = new double[model.sizes.length][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new double[model.sizes[i]];
+        }
+    }
+
+    public double[] input() {
+        return buffers[0];
+    }
+
+    public double[] forward() {
+        for (int l = 0; l < model.activations.length; l++) {
+            dense(buffers[l], buffers[l + 1], model.weights[l], model.scales[l], model.biases[l], model.activations[l]);
+        }
+        return buffers[buffers.length - 1];
+    }
+
+    /**
+     * Copy the values into the input buffer and run the network
+     */
+    public double[] forward(double[] in) {
+        System.arraycopy(in, 0, buffers[0], 0, buffers[0].length);
+        return forward();
+    }
+
+    private static void dense(double[] input, double[] output, byte[] q, float[] scales, float[] biases, Activation act) {
+        int in = input.length;
+        for (int o = 0, row = 0; o < output.length; o++, row += in) {
+            double sum = 0;
+            for (int i = 0; i < input.length; i++) {
+                sum += input[i] * q[row + i];
+            }
+            output[o] = act.apply(sum * scales[o] + biases[o]);
+        }
+    }
+
+    public int inputSize() {
+        return model.inputSize();
+    }
+
+    public int outputSize() {
+        return model.outputSize();
+    }
+}
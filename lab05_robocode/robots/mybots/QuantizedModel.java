@@ -0,0 +1,224 @@
+package mybots;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * QuantizedModel
+ * A NeuralModel with int8 weights: every output neuron's weight row is scaled so its largest
+ * magnitude maps to 127 and stored as one signed byte per weight, with the float scale kept
+ * alongside. Biases stay float and the normalization stats stay double - they are a few dozen
+ * values. A 7-20-20-3 net shrinks from ~15 KB of text to ~1 KB, and a wide layer's weights fit
+ * in an eighth of the cache a double[] needs.
+ *
+ * File layout (neural_weights.q8, all little-endian):
+ *   0  int    magic "RCQ8"
+ *   4  short  format version
+ *   6  short  layer count L
+ *   8  long   CRC32 of the neural_weights.txt it was quantized from, or -1 (version 2+)
+ *   16 int    sizes[0..L]
+ *   .. short  features spec length, UTF-8 bytes
+ *   .. double input mean, input std (sizes[0] each), output mean, output std (sizes[L] each)
+ *   then per layer (out = sizes[l + 1], in = sizes[l]):
+ *      byte   activation ordinal
+ *      float  scales[out]
+ *      float  biases[out]
+ *      byte   weights[out * in], row-major [out][in]
+ */
+public class QuantizedModel {
+
+    public static final String FILE = "neural_weights.q8";
+    public static final int MAGIC = 0x38514352; // "RCQ8" when read as little-endian bytes
+    public static final int VERSION = 2;
+
+    public final double[] inputMean;
+    public final double[] inputStd;
+    public final double[] outputMean;
+    public final double[] outputStd;
+    public final int[] sizes;
+    public final Activation[] activations;
+    public final float[][] scales;      // [layer][out]
+    public final float[][] biases;      // [layer][out]
+    public final byte[][] weights;      // [layer][out * in]
+    public final String features;
+
+    private QuantizedModel(double[] inputMean, double[] inputStd, double[] outputMean, double[] outputStd,
+                           int[] sizes, Activation[] activations, float[][] scales, float[][] biases,
+                           byte[][] weights, String features) {
+        this.inputMean = inputMean;
+        this.inputStd = inputStd;
+        this.outputMean = outputMean;
+        this.outputStd = outputStd;
+        this.sizes = sizes;
+        this.activations = activations;
+        this.scales = scales;
+        this.biases = biases;
+        this.weights = weights;
+        this.features = features;
+    }
+
+    /**
+     * Symmetric per-row quantization: q = round(w / scale), scale = max|w| / 127
+     */
+    public static QuantizedModel quantize(NeuralModel m) {
+        int layers = m.activations.length;
+        float[][] scales = new float[layers][];
+        float[][] biases = new float[layers][];
+        byte[][] weights = new byte[layers][];
+        InferenceEngine layout = m.newEngine();
+        for (int l = 0; l < layers; l++) {
+            int in = m.sizes[l];
+            int out = m.sizes[l + 1];
+            int w = layout.weightOffset(l);
+            int b = layout.biasOffset(l);
+            scales[l] = new float[out];
+            biases[l] = new float[out];
+            weights[l] = new byte[out * in];
+            for (int o = 0; o < out; o++) {
+                double max = 0;
+                for (int i = 0; i < in; i++) {
+                    max = Math.max(max, Math.abs(m.params[w + o * in + i]));
+                }
+                float scale = max == 0 ? 1f : (float) (max / 127.0);
+                scales[l][o] = scale;
+                biases[l][o] = (float) m.params[b + o];
+                for (int i = 0; i < in; i++) {
+                    long q = Math.round(m.params[w + o * in + i] / scale);
+                    weights[l][o * in + i] = (byte) Math.max(-127, Math.min(127, q));
+                }
+            }
+        }
+        return new QuantizedModel(m.inputMean, m.inputStd, m.outputMean, m.outputStd,
+                m.sizes.clone(), m.activations.clone(), scales, biases, weights, m.features);
+    }
+
+    /**
+     * Size of the file write() produces
+     */
+    public int byteSize() {
+        int n = 16 + 4 * sizes.length + 2 + features.getBytes(StandardCharsets.UTF_8).length;
+        n += 8 * (2 * sizes[0] + 2 * sizes[sizes.length - 1]);
+        for (int l = 0; l < activations.length; l++) {
+            n += 1 + 8 * sizes[l + 1] + weights[l].length;
+        }
+        return n;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        write(out, NeuralModel.UNKNOWN_SOURCE);
+    }
+
+    /**
+     * @param sourceCrc32 CRC32 of the text file the float model was read from, or NeuralModel.UNKNOWN_SOURCE
+     */
+    public void write(OutputStream out, long sourceCrc32) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.putShort((short) activations.length);
+        buf.putLong(sourceCrc32);
+        for (int size : sizes) buf.putInt(size);
+        byte[] spec = features.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) spec.length);
+        buf.put(spec);
+        for (double v : inputMean) buf.putDouble(v);
+        for (double v : inputStd) buf.putDouble(v);
+        for (double v : outputMean) buf.putDouble(v);
+        for (double v : outputStd) buf.putDouble(v);
+        for (int l = 0; l < activations.length; l++) {
+            buf.put((byte) activations[l].ordinal());
+            for (float v : scales[l]) buf.putFloat(v);
+            for (float v : biases[l]) buf.putFloat(v);
+            buf.put(weights[l]);
+        }
+        out.write(buf.array());
+    }
+
+    public static QuantizedModel read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    public static QuantizedModel read(ByteBuffer buf) throws IOException {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buf.getInt() != MAGIC) throw new IOException("Not a quantized model file");
+            int version = buf.getShort();
+            if (version != 1 && version != VERSION) throw new IOException("Unsupported quantized model version " + version);
+            int layers = buf.getShort();
+            if (version >= 2) buf.getLong();
+            int[] sizes = new int[layers + 1];
+            for (int i = 0; i <= layers; i++) sizes[i] = buf.getInt();
+            byte[] spec = new byte[buf.getShort()];
+            buf.get(spec);
+
+            double[] inputMean = getDoubles(buf, sizes[0]);
+            double[] inputStd = getDoubles(buf, sizes[0]);
+            double[] outputMean = getDoubles(buf, sizes[layers]);
+            double[] outputStd = getDoubles(buf, sizes[layers]);
+
+            Activation[] activations = new Activation[layers];
+            float[][] scales = new float[layers][];
+            float[][] biases = new float[layers][];
+            byte[][] weights = new byte[layers][];
+            for (int l = 0; l < layers; l++) {
+                int out = sizes[l + 1];
+                activations[l] = Activation.values()[buf.get()];
+                scales[l] = getFloats(buf, out);
+                biases[l] = getFloats(buf, out);
+                weights[l] = new byte[out * sizes[l]];
+                buf.get(weights[l]);
+            }
+            return new QuantizedModel(inputMean, inputStd, outputMean, outputStd, sizes, activations,
+                    scales, biases, weights, new String(spec, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, bad activation ordinal, negative sizes
+            throw new IOException("Corrupt quantized model file: " + e, e);
+        }
+    }
+
+    private static double[] getDoubles(ByteBuffer buf, int n) {
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) v[i] = buf.getDouble();
+        return v;
+    }
+
+    private static float[] getFloats(ByteBuffer buf, int n) {
+        float[] v = new float[n];
+        for (int i = 0; i < n; i++) v[i] = buf.getFloat();
+        return v;
+    }
+
+    /**
+     * The source CRC32 in a quantized model's header, without parsing the rest
+     */
+    public static long sourceCrc32(ByteBuffer bytes) {
+        ByteBuffer buf = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < 16 || buf.getInt(0) != MAGIC || buf.getShort(4) < 2) return NeuralModel.UNKNOWN_SOURCE;
+        return buf.getLong(8);
+    }
+
+    public QuantizedEngine newEngine() {
+        return new QuantizedEngine(this);
+    }
+
+    public int inputSize() {
+        return sizes[0];
+    }
+
+    public int outputSize() {
+        return sizes[sizes.length - 1];
+    }
+}
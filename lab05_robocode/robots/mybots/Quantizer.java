@@ -0,0 +1,114 @@
+package mybots;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Quantizer
+ * Offline tool: converts neural_weights.txt into the int8 neural_weights.q8 that NeuralNetBot
+ * prefers when it is present, and optionally reports how far the quantized outputs drift from
+ * the float ones over a logged dataset (training_data.csv / .bin / training_data.manifest).
+ * The .q8 records the text file's CRC32, so NeuralNetBot skips it once the text model is retrained.
+ *
+ * Usage: java -cp robots;libs/robocode.jar mybots.Quantizer <neural_weights.txt> [out.q8] [--data <dataset>]
+ *        (default output: neural_weights.q8 next to the input)
+ */
+public class Quantizer {
+
+    private static final String[] OUTPUT_NAMES = {"turn_rate", "move_distance", "fire_power"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java mybots.Quantizer <neural_weights.txt> [out.q8] [--data <dataset file or manifest>]");
+            return;
+        }
+        File textFile = new File(args[0]);
+        File outFile = new File(textFile.getAbsoluteFile().getParentFile(), QuantizedModel.FILE);
+        File dataFile = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                dataFile = new File(args[++i]);
+            } else {
+                outFile = new File(args[i]);
+            }
+        }
+
+        NeuralModel model = NeuralModel.readText(textFile);
+        QuantizedModel quantized = QuantizedModel.quantize(model);
+        OutputStream out = new FileOutputStream(outFile);
+        try {
+            quantized.write(out, ModelCache.crc32(textFile));
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + outFile + ": " + quantized.byteSize() + " bytes (text model: "
+                + textFile.length() + " bytes)");
+
+        if (dataFile != null) {
+            Dataset data = dataFile.getName().endsWith(".manifest")
+                    ? DatasetLoader.loadManifest(dataFile, null, false) : DatasetLoader.load(dataFile);
+            report(model, quantized, data);
+        }
+    }
+
+    /**
+     * Run both models on every row of the dataset and print the per-output error
+     */
+    static void report(NeuralModel model, QuantizedModel quantized, Dataset data) {
+        String[] inputColumns = FeatureExtractor.parse(model.features).columnNames();
+        int[] columnIndex = new int[inputColumns.length];
+        for (int i = 0; i < inputColumns.length; i++) {
+            columnIndex[i] = data.columnIndex(inputColumns[i]);
+            if (columnIndex[i] < 0) {
+                throw new IllegalArgumentException("Dataset has no column " + inputColumns[i]);
+            }
+        }
+
+        InferenceEngine exact = model.newEngine();
+        QuantizedEngine approx = quantized.newEngine();
+        int outputs = model.outputSize();
+        double[] maxErr = new double[outputs];
+        double[] sumSq = new double[outputs];
+        long fireDisagree = 0;
+
+        for (int r = 0; r < data.rows; r++) {
+            double[] a = exact.input();
+            double[] b = approx.input();
+            for (int i = 0; i < columnIndex.length; i++) {
+                double v = (data.get(r, columnIndex[i]) - model.inputMean[i]) / model.inputStd[i];
+                a[i] = v;
+                b[i] = v;
+            }
+            double[] ya = exact.forward();
+            double[] yb = approx.forward();
+            for (int o = 0; o < outputs; o++) {
+                // Compare in the robot's units, after denormalizing
+                double err = Math.abs(ya[o] - yb[o]) * model.outputStd[o];
+                maxErr[o] = Math.max(maxErr[o], err);
+                sumSq[o] += err * err;
+            }
+            // Would the robot have made a different fire decision? (NeuralNetBot fires above 0.1)
+            if (outputs > 2) {
+                boolean fa = ya[2] * model.outputStd[2] + model.outputMean[2] > 0.1;
+                boolean fb = yb[2] * model.outputStd[2] + model.outputMean[2] > 0.1;
+                if (fa != fb) fireDisagree++;
+            }
+        }
+
+        System.out.println("Accuracy over " + data.rows + " rows (errors in output units):");
+        System.out.println(String.format(Locale.ROOT, "%-14s %12s %12s %12s", "output", "max abs err", "rmse", "rmse/std %"));
+        for (int o = 0; o < outputs; o++) {
+            double rmse = data.rows == 0 ? 0 : Math.sqrt(sumSq[o] / data.rows);
+            System.out.println(String.format(Locale.ROOT, "%-14s %12.5f %12.5f %12.4f",
+                    o < OUTPUT_NAMES.length ? OUTPUT_NAMES[o] : "output_" + o, maxErr[o], rmse,
+                    100.0 * rmse / model.outputStd[o]));
+        }
+        if (outputs > 2) {
+            System.out.println(String.format(Locale.ROOT, "fire decision differs on %d rows (%.3f%%)",
+                    fireDisagree, data.rows == 0 ? 0 : 100.0 * fireDisagree / data.rows));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package mybots;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * QuotaAwareSink
+ * Keeps the dataset inside the robot's data quota.
+ * At the start of every round the quota that is left is split evenly over the rounds that are left.
+ * Rows stream straight through while the round is inside its share. Once the share gets down to
+ * what the reservoir needs, the rest of the round's rows go into a Reservoir, and endRound()
+ * writes the sampled rows. A long battle then still ends with rows from every round instead of
+ * a dataset that just stops at the quota. The sampled rows are written back in the order they
+ * arrived (each carries its index within the round), so a segment is always in time order.
+ * The manifest's sampled_from tells how many tail rows the sample stands for.
+ *
+ * beginRound() has to be called from the robot thread (only it may ask Robocode for the quota),
+ * after the previous round was flushed, so the quota Robocode reports is up to date.
+ */
+public class QuotaAwareSink implements SampleSink {
+
+    private final SampleSink inner;
+    private final LongSupplier bytesWritten;
+    private final Reservoir reservoir;
+    private final double[] scratch;     // row + its index within the round
+    private final double[] row;
+    private final int maxRecordBytes;
+    private final long pendingAllowance;
+    private final long roundOverhead;
+
+    private long share = Long.MAX_VALUE;
+    private long baseline = 0;
+    private long rowsStreamed = 0;
+    private long roundRows = 0;
+    private boolean sampling = false;
+
+    /**
+     * @param bytesWritten     bytes that have reached the data files so far
+     * @param reservoirRows    most rows the reservoir keeps per round
+     * @param maxRecordBytes   worst case size of one row on disk (before compression)
+     * @param pendingAllowance most bytes that can sit in buffers without being counted yet
+     * @param roundOverhead    bytes kept free per round for other files (e.g. the manifest)
+     */
+    public QuotaAwareSink(SampleSink inner, LongSupplier bytesWritten, int reservoirRows, int width,
+                          int maxRecordBytes, long pendingAllowance, long roundOverhead) {
+        this.inner = inner;
+        this.bytesWritten = bytesWritten;
+        this.reservoir = new Reservoir(reservoirRows, width + 1);
+        this.scratch = new double[width + 1];
+        this.row = new double[width];
+        this.maxRecordBytes = maxRecordBytes;
+        this.pendingAllowance = pendingAllowance;
+        this.roundOverhead = roundOverhead;
+    }
+
+    /**
+     * Work out this round's share of the quota
+     * @param quotaAvailable getDataQuotaAvailable()
+     * @param roundsLeft     rounds left in the battle, including this one
+     */
+    public void beginRound(long quotaAvailable, int roundsLeft) {
+        roundsLeft = Math.max(1, roundsLeft);
+        share = Math.max(0, (quotaAvailable - roundOverhead * roundsLeft) / roundsLeft);
+        baseline = bytesWritten.getAsLong();
+        rowsStreamed = 0;
+        roundRows = 0;
+        sampling = false;
+
+        // The reservoir may use at most half of the round's share
+        reservoir.reset((int) Math.min(Integer.MAX_VALUE, share / 2 / maxRecordBytes));
+    }
+
+    public void write(double[] row) {
+        long index = roundRows++;
+        if (!sampling) {
+            // Rows still in buffers are not counted yet, but can be no bigger than what we streamed
+            long unflushed = Math.min(rowsStreamed * maxRecordBytes, pendingAllowance);
+            long used = bytesWritten.getAsLong() - baseline + unflushed;
+            if (used + maxRecordBytes + reserveBytes() <= share) {
+                inner.write(row);
+                rowsStreamed++;
+                return;
+            }
+            sampling = true;
+        }
+        System.arraycopy(row, 0, scratch, 0, row.length);
+        scratch[row.length] = index;
+        reservoir.offer(scratch);
+    }
+
+    private long reserveBytes() {
+        return (long) reservoir.limit() * maxRecordBytes;
+    }
+
+    /**
+     * Write this round's sampled rows. Call once the round's rows have all been written.
+     * @return rows the reservoir chose from this round (0 if the round never ran low)
+     */
+    public long endRound() {
+        long seen = reservoir.seen();
+        int n = reservoir.size();
+        if (n > 0) {
+            // Back into arrival order: sort (index, slot) pairs packed into one long
+            int width = row.length;
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) {
+                reservoir.copyRow(i, scratch);
+                order[i] = (long) scratch[width] * reservoir.capacity() + i;
+            }
+            Arrays.sort(order);
+            for (long key : order) {
+                reservoir.copyRow((int) (key % reservoir.capacity()), scratch);
+                System.arraycopy(scratch, 0, row, 0, width);
+                inner.write(row);
+            }
+        }
+        reservoir.clear();
+        return seen;
+    }
+
+    public void flush() {
+        inner.flush();
+    }
+
+    public void close() {
+        endRound();
+        inner.close();
+    }
+
+    public boolean checkError() {
+        return inner.checkError();
+    }
+
+    /**
+     * True once this round ran low on quota and rows are being sampled instead of streamed
+     */
+    public boolean isSampling() {
+        return sampling;
+    }
+
+    /**
+     * Rows offered to the reservoir since sampling started this round
+     */
+    public long sampledFrom() {
+        return reservoir.seen();
+    }
+
+    /**
+     * Most rows the reservoir keeps this round
+     */
+    public int reservoirLimit() {
+        return reservoir.limit();
+    }
+
+    /**
+     * This round's share of the quota in bytes
+     */
+    public long roundShare() {
+        return share;
+    }
+}
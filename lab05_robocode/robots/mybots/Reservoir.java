@@ -0,0 +1,125 @@
+package mybots;
+
+/**
+ * Reservoir
+ * Keeps a uniform random sample of at most k rows out of everything offered (Algorithm R).
+ * Rows live in one flat double[] and the random numbers come from a xorshift generator,
+ * so offer() is O(1) and never allocates.
+ */
+public class Reservoir {
+
+    private final double[] slots;
+    private final int width;
+    private final int capacity;
+    private int limit;
+    private int size = 0;
+    private long seen = 0;
+    private long seed;
+
+    public Reservoir(int capacity, int width) {
+        this(capacity, width, System.nanoTime());
+    }
+
+    /**
+     * With a fixed seed, for offline tools that want repeatable samples
+     */
+    public Reservoir(int capacity, int width, long seed) {
+        this.capacity = Math.max(1, capacity);
+        this.width = width;
+        this.limit = this.capacity;
+        this.slots = new double[this.capacity * width];
+        this.seed = seed | 1L;
+    }
+
+    /**
+     * Continue a sample kept earlier: count rows (flat, row-major) that were picked out of seen.
+     * Offering more rows afterwards keeps the sample uniform over all seen + new rows.
+     */
+    public void restore(double[] rows, int count, long seen) {
+        clear();
+        int n = Math.min(count, limit);
+        System.arraycopy(rows, 0, slots, 0, n * width);
+        size = n;
+        this.seen = Math.max(seen, n);
+    }
+
+    /**
+     * Offer a row. It is kept with probability limit / (rows seen so far).
+     * @return true if the row went into the sample
+     */
+    public boolean offer(double[] row) {
+        seen++;
+        int slot;
+        if (size < limit) {
+            slot = size++;
+        } else {
+            if (limit == 0) return false;
+            long r = nextRandom() % seen;
+            if (r >= limit) return false;
+            slot = (int) r;
+        }
+        System.arraycopy(row, 0, slots, slot * width, width);
+        return true;
+    }
+
+    /**
+     * Write every kept row to the sink and empty the reservoir
+     * @return number of rows written
+     */
+    public int drainTo(SampleSink sink, double[] scratch) {
+        int n = size;
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(slots, i * width, scratch, 0, width);
+            sink.write(scratch);
+        }
+        clear();
+        return n;
+    }
+
+    /**
+     * Copy kept row i (0 <= i < size()) into row
+     */
+    public void copyRow(int i, double[] row) {
+        System.arraycopy(slots, i * width, row, 0, width);
+    }
+
+    public void clear() {
+        size = 0;
+        seen = 0;
+    }
+
+    /**
+     * Empty the reservoir and keep at most limit rows from now on (capped at the capacity)
+     */
+    public void reset(int limit) {
+        clear();
+        this.limit = Math.max(0, Math.min(limit, capacity));
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Rows offered since the last clear()
+     */
+    public long seen() {
+        return seen;
+    }
+
+    // xorshift64, always returns a non-negative value
+    private long nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return seed & Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,92 @@
+package mybots;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SampleRing
+ * A fixed size single-producer/single-consumer queue of rows, stored in one flat double[].
+ * The robot thread is the only producer and the drainer the only consumer, so no locks are needed:
+ * each side only writes its own counter and publishes it with lazySet.
+ * offer() never allocates and never blocks - if the ring is full the row is dropped and counted.
+ */
+public class SampleRing {
+
+    private final double[] slots;
+    private final int width;
+    private final int capacity;
+    private final int mask;
+
+    // Next slot the consumer will read / the producer will write. Both only ever increase.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Producer's last look at head, so a non-full ring does not touch the consumer's counter
+    private long cachedHead = 0;
+
+    /**
+     * @param capacity number of rows, rounded up to a power of two
+     * @param width    number of values per row
+     */
+    public SampleRing(int capacity, int width) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.width = width;
+        this.slots = new double[cap * width];
+    }
+
+    /**
+     * Producer side: copy the row into the next free slot.
+     * @return false if the ring was full and the row was dropped
+     */
+    public boolean offer(double[] row) {
+        long t = tail.get();
+        if (t - cachedHead >= capacity) {
+            cachedHead = head.get();
+            if (t - cachedHead >= capacity) {
+                dropped.lazySet(dropped.get() + 1);
+                return false;
+            }
+        }
+        System.arraycopy(row, 0, slots, (int) (t & mask) * width, width);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side: hand up to max queued rows to the sink, oldest first.
+     * @param scratch a row sized buffer owned by the consumer
+     * @return number of rows drained
+     */
+    public int drainTo(SampleSink sink, double[] scratch, int max) {
+        long h = head.get();
+        long available = tail.get() - h;
+        int n = (int) Math.min(available, max);
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(slots, (int) ((h + i) & mask) * width, scratch, 0, width);
+            sink.write(scratch);
+        }
+        head.lazySet(h + n);
+        return n;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Total rows rejected because the ring was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+}
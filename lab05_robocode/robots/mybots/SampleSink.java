@@ -0,0 +1,29 @@
+package mybots;
+
+/**
+ * SampleSink
+ * Where DataCollectorBot sends its training rows.
+ * Works like PrintStream: writes never throw, check checkError() instead.
+ */
+public interface SampleSink {
+
+    /**
+     * Append one row. The array is owned by the caller and may be reused right after the call.
+     */
+    void write(double[] row);
+
+    /**
+     * Push any buffered rows to the underlying file
+     */
+    void flush();
+
+    /**
+     * Flush and close the underlying file
+     */
+    void close();
+
+    /**
+     * True if any write, flush or close has failed so far
+     */
+    boolean checkError();
+}
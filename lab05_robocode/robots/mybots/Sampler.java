@@ -0,0 +1,161 @@
+package mybots;
+
+/**
+ * Sampler
+ * Thins out the rows before they are logged. With a locked radar we scan the same enemy every
+ * tick, so most rows are near copies of the one before. Policies (sample.policy in collector.properties):
+ *
+ *   all        - keep every row (default)
+ *   change     - keep a row only if some column moved by more than a relative threshold since the
+ *                last kept row, but always keep at least one row every max_gap rows
+ *   reservoir  - keep a uniform random sample of at most N rows per round
+ *   stratified - one reservoir per enemy distance bucket, so close and far fights are equally
+ *                represented no matter how long we spent at each range
+ *
+ * All state is primitive arrays allocated up front, and each row costs O(1) (O(width) for change).
+ * Reservoir based policies hand their rows on when endRound() is called.
+ */
+public class Sampler implements SampleSink {
+
+    public enum Policy { ALL, CHANGE, RESERVOIR, STRATIFIED }
+
+    private final SampleSink next;
+    private final Policy policy;
+    private final int width;
+    private final double[] scratch;
+
+    // CHANGE
+    private final int compareColumns;
+    private final double threshold;
+    private final int maxGap;
+    private final double[] lastKept;
+    private boolean haveLast = false;
+    private int gap = 0;
+
+    // RESERVOIR / STRATIFIED
+    private final Reservoir[] reservoirs;
+    private final int bucketColumn;
+    private final double bucketWidth;
+
+    private long seen = 0;
+    private long kept = 0;
+
+    private Sampler(SampleSink next, Policy policy, int width, int compareColumns, double threshold, int maxGap,
+                    int reservoirs, int rowsPerReservoir, int bucketColumn, double bucketWidth) {
+        this.next = next;
+        this.policy = policy;
+        this.width = width;
+        this.scratch = new double[width];
+        this.compareColumns = compareColumns;
+        this.threshold = threshold;
+        this.maxGap = maxGap;
+        this.lastKept = new double[width];
+        this.reservoirs = new Reservoir[reservoirs];
+        for (int i = 0; i < reservoirs; i++) {
+            this.reservoirs[i] = new Reservoir(rowsPerReservoir, width);
+        }
+        this.bucketColumn = bucketColumn;
+        this.bucketWidth = bucketWidth;
+    }
+
+    public static Sampler all(SampleSink next, int width) {
+        return new Sampler(next, Policy.ALL, width, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param compareColumns only the first compareColumns columns are compared (e.g. skip the labels)
+     * @param threshold      relative change needed: |new - last| > threshold * (|last| + 1)
+     * @param maxGap         keep a row at least this often even if nothing changed
+     */
+    public static Sampler change(SampleSink next, int width, int compareColumns, double threshold, int maxGap) {
+        return new Sampler(next, Policy.CHANGE, width, compareColumns, threshold, maxGap, 0, 0, 0, 0);
+    }
+
+    public static Sampler reservoir(SampleSink next, int width, int rowsPerRound) {
+        return new Sampler(next, Policy.RESERVOIR, width, 0, 0, 0, 1, rowsPerRound, 0, 0);
+    }
+
+    /**
+     * @param column      the column to bucket on (e.g. enemy_distance)
+     * @param bucketWidth width of each bucket, the last bucket takes everything beyond
+     */
+    public static Sampler stratified(SampleSink next, int width, int column, double bucketWidth, int buckets,
+                                     int rowsPerBucket) {
+        return new Sampler(next, Policy.STRATIFIED, width, 0, 0, 0, buckets, rowsPerBucket, column, bucketWidth);
+    }
+
+    public void write(double[] row) {
+        seen++;
+        switch (policy) {
+            case ALL:
+                kept++;
+                next.write(row);
+                break;
+            case CHANGE:
+                if (!haveLast || ++gap >= maxGap || changed(row)) {
+                    System.arraycopy(row, 0, lastKept, 0, width);
+                    haveLast = true;
+                    gap = 0;
+                    kept++;
+                    next.write(row);
+                }
+                break;
+            case RESERVOIR:
+                reservoirs[0].offer(row);
+                break;
+            case STRATIFIED:
+                int bucket = (int) (row[bucketColumn] / bucketWidth);
+                if (bucket < 0) bucket = 0;
+                if (bucket >= reservoirs.length) bucket = reservoirs.length - 1;
+                reservoirs[bucket].offer(row);
+                break;
+        }
+    }
+
+    private boolean changed(double[] row) {
+        for (int i = 0; i < compareColumns; i++) {
+            double last = lastKept[i];
+            if (Math.abs(row[i] - last) > threshold * (Math.abs(last) + 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hand this round's sampled rows on and start afresh for the next round
+     */
+    public void endRound() {
+        for (Reservoir r : reservoirs) {
+            kept += r.drainTo(next, scratch);
+        }
+        haveLast = false;
+        gap = 0;
+    }
+
+    public void flush() {
+        next.flush();
+    }
+
+    public void close() {
+        endRound();
+        next.close();
+    }
+
+    public boolean checkError() {
+        return next.checkError();
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public long seen() {
+        return seen;
+    }
+
+    /**
+     * Rows handed on so far (reservoir rows count once endRound() wrote them)
+     */
+    public long kept() {
+        return kept;
+    }
+}
@@ -0,0 +1,59 @@
+package mybots;
+
+/**
+ * ScalarKernel
+ * Plain Java DenseKernel.
+ *
+ * Four output neurons are computed per pass over the input: four independent sums keep the
+ * FPU busy where a single running sum would wait on each add. Every sum still adds its terms
+ * in input order and the bias last, the same order as the original NeuralNetBot code, so
+ * results are bit-identical to it. The loops are bounded by the buffer lengths (exactly the
+ * layer sizes) so the JIT can drop the bounds checks.
+ */
+public class ScalarKernel implements DenseKernel {
+
+    public void dense(double[] p, int w, int b, double[] input, double[] output, boolean relu) {
+        int in = input.length;
+        int o = 0;
+        int row = w;
+        for (; o + 3 < output.length; o += 4, row += 4 * in) {
+            int row1 = row + in;
+            int row2 = row1 + in;
+            int row3 = row2 + in;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int i = 0; i < input.length; i++) {
+                double x = input[i];
+                s0 += x * p[row + i];
+                s1 += x * p[row1 + i];
+                s2 += x * p[row2 + i];
+                s3 += x * p[row3 + i];
+            }
+            s0 += p[b + o];
+            s1 += p[b + o + 1];
+            s2 += p[b + o + 2];
+            s3 += p[b + o + 3];
+            if (relu) {
+                if (s0 < 0) s0 = 0;
+                if (s1 < 0) s1 = 0;
+                if (s2 < 0) s2 = 0;
+                if (s3 < 0) s3 = 0;
+            }
+            output[o] = s0;
+            output[o + 1] = s1;
+            output[o + 2] = s2;
+            output[o + 3] = s3;
+        }
+        for (; o < output.length; o++, row += in) {
+            double sum = 0;
+            for (int i = 0; i < input.length; i++) {
+                sum += input[i] * p[row + i];
+            }
+            sum += p[b + o];
+            output[o] = relu && sum < 0 ? 0 : sum;
+        }
+    }
+
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,223 @@
+package mybots;
+
+import robocode.RobocodeFileOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SegmentedSink
+ * Writes every round to its own file (training_data.r0007.bin.gz, ...) and keeps a manifest
+ * (training_data.manifest) listing each finished segment with its row count, per column
+ * min/max/mean and a CRC32 of the file. The manifest is rewritten after every segment, so a
+ * crash mid-battle only loses the round in progress, and a trainer can load any subset of rounds.
+ *
+ * Manifest format (java.util.Properties compatible):
+ *   dataset.version=1
+ *   dataset.format=binary|csv
+ *   dataset.compressed=true|false
+ *   dataset.columns=enemy_distance,...
+ *   dataset.opponents=name0,name1,...   robot names by opponent_id (when known)
+ *   dataset.segments=N
+ *   segment.0.file=training_data.r0000.bin.gz
+ *   segment.0.round=0
+ *   segment.0.rows=...           rows in the file
+ *   segment.0.sampled_from=...   rows the quota reservoir chose from (0 = nothing was sampled)
+ *   segment.0.bytes=...          file size
+ *   segment.0.crc32=...          CRC32 of the file bytes, in hex
+ *   segment.0.min=... / max=... / mean=...   comma separated, one value per column
+ */
+public class SegmentedSink implements SampleSink {
+
+    public static final String MANIFEST_NAME = "training_data.manifest";
+    public static final int MANIFEST_VERSION = 1;
+
+    private final File dataDir;
+    private final String[] columns;
+    private final boolean binary;
+    private final boolean useFloat;
+    private final boolean compress;
+
+    // Bytes of all finished segments plus the open one, as they reached the disk
+    private long closedBytes = 0;
+
+    // The open segment (null between rounds)
+    private SampleSink segment;
+    private CountingOutputStream counter;
+    private CRC32 crc;
+    private String segmentFile;
+    private int segmentRound;
+    private long rows;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+
+    private final List<String> manifestEntries = new ArrayList<String>();
+    private OpponentTable opponents;
+    private boolean error = false;
+
+    public SegmentedSink(File dataDir, String[] columns, boolean binary, boolean useFloat, boolean compress) {
+        this.dataDir = dataDir;
+        this.columns = columns;
+        this.binary = binary;
+        this.useFloat = useFloat;
+        this.compress = compress;
+        this.min = new double[columns.length];
+        this.max = new double[columns.length];
+        this.sum = new double[columns.length];
+    }
+
+    /**
+     * Record the opponent_id to robot name mapping in the manifest
+     */
+    public void setOpponents(OpponentTable opponents) {
+        this.opponents = opponents;
+    }
+
+    /**
+     * File name used for a round's segment
+     */
+    public String segmentName(int round) {
+        return String.format("training_data.r%04d.%s%s", round, binary ? "bin" : "csv", compress ? ".gz" : "");
+    }
+
+    /**
+     * Worst case size of one row on disk, before compression
+     */
+    public int maxRecordBytes() {
+        return binary ? columns.length * (useFloat ? 4 : 8) : columns.length * 25;
+    }
+
+    /**
+     * Open the segment file for a round. Any segment still open is finished first.
+     */
+    public void beginSegment(int round) throws IOException {
+        if (segment != null) endSegment(0);
+
+        segmentFile = segmentName(round);
+        segmentRound = round;
+        rows = 0;
+        for (int i = 0; i < columns.length; i++) {
+            min[i] = Double.POSITIVE_INFINITY;
+            max[i] = Double.NEGATIVE_INFINITY;
+            sum[i] = 0;
+        }
+
+        crc = new CRC32();
+        counter = new CountingOutputStream(new CheckedOutputStream(
+                new RobocodeFileOutputStream(new File(dataDir, segmentFile)), crc));
+        OutputStream stream = counter;
+        if (compress) {
+            // syncFlush so a flush really puts the compressed bytes on disk
+            stream = new GZIPOutputStream(counter, 8192, true);
+        }
+        segment = binary ? new BinarySampleSink(stream, columns, useFloat) : new CsvSampleSink(stream, columns);
+    }
+
+    /**
+     * Close the open segment and rewrite the manifest
+     * @param sampledFrom rows the quota reservoir picked this segment's rows from (0 if none)
+     */
+    public void endSegment(long sampledFrom) {
+        if (segment == null) return;
+        segment.close();
+        if (segment.checkError()) error = true;
+        closedBytes += counter.getCount();
+
+        StringBuilder sb = new StringBuilder();
+        String prefix = "segment." + manifestEntries.size() + ".";
+        sb.append(prefix).append("file=").append(segmentFile).append('\n');
+        sb.append(prefix).append("round=").append(segmentRound).append('\n');
+        sb.append(prefix).append("rows=").append(rows).append('\n');
+        sb.append(prefix).append("sampled_from=").append(sampledFrom).append('\n');
+        sb.append(prefix).append("bytes=").append(counter.getCount()).append('\n');
+        sb.append(prefix).append("crc32=").append(Long.toHexString(crc.getValue())).append('\n');
+        appendStats(sb, prefix + "min=", min, 1);
+        appendStats(sb, prefix + "max=", max, 1);
+        appendStats(sb, prefix + "mean=", sum, rows == 0 ? 0 : 1.0 / rows);
+        manifestEntries.add(sb.toString());
+
+        segment = null;
+        counter = null;
+        writeManifest();
+    }
+
+    private void appendStats(StringBuilder sb, String key, double[] values, double scale) {
+        sb.append(key);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(rows == 0 ? 0 : values[i] * scale);
+        }
+        sb.append('\n');
+    }
+
+    private void writeManifest() {
+        PrintStream ps = null;
+        try {
+            ps = new PrintStream(new RobocodeFileOutputStream(new File(dataDir, MANIFEST_NAME)));
+            ps.println("dataset.version=" + MANIFEST_VERSION);
+            ps.println("dataset.format=" + (binary ? "binary" : "csv"));
+            ps.println("dataset.compressed=" + compress);
+            ps.println("dataset.columns=" + String.join(",", columns));
+            if (opponents != null) {
+                StringBuilder names = new StringBuilder();
+                for (int i = 0; i < opponents.size(); i++) {
+                    if (i > 0) names.append(',');
+                    names.append(opponents.nameOf(i));
+                }
+                ps.println("dataset.opponents=" + names);
+            }
+            ps.println("dataset.segments=" + manifestEntries.size());
+            for (String entry : manifestEntries) {
+                ps.print(entry);
+            }
+            if (ps.checkError()) error = true;
+        } catch (IOException e) {
+            error = true;
+        } finally {
+            if (ps != null) ps.close();
+        }
+    }
+
+    public void write(double[] row) {
+        if (segment == null) return;
+        for (int i = 0; i < columns.length; i++) {
+            double v = row[i];
+            if (v < min[i]) min[i] = v;
+            if (v > max[i]) max[i] = v;
+            sum[i] += v;
+        }
+        rows++;
+        segment.write(row);
+    }
+
+    public void flush() {
+        if (segment != null) segment.flush();
+    }
+
+    public void close() {
+        endSegment(0);
+    }
+
+    public boolean checkError() {
+        return error || (segment != null && segment.checkError());
+    }
+
+    /**
+     * Bytes written to disk by every segment so far, after compression
+     */
+    public long bytesWritten() {
+        return closedBytes + (counter == null ? 0 : counter.getCount());
+    }
+
+    public int segmentCount() {
+        return manifestEntries.size();
+    }
+}
@@ -0,0 +1,115 @@
+package mybots;
+
+import robocode.RobocodeFileOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * TickProfiler
+ * Measures how long our event handlers take compared to the per-turn CPU budget.
+ * Each named span gets a LatencyHistogram, spans are timed with System.nanoTime(), and nothing
+ * is allocated while recording. Keep one profiler for the whole battle (static field) and
+ * call writeReport() from onBattleEnded.
+ *
+ * Usage:
+ *   int SCAN = profiler.addSpan("onScannedRobot");   // once
+ *   long t0 = System.nanoTime();
+ *   ...
+ *   profiler.record(SCAN, t0);
+ */
+public class TickProfiler {
+
+    /**
+     * robocode.cpu.constant from config/robocode.properties on the lab machines, in nanoseconds.
+     * Robots cannot read that file, so pass the real value in if it differs.
+     */
+    public static final long DEFAULT_TURN_BUDGET_NANOS = 3860671L;
+
+    private final long turnBudgetNanos;
+    private String[] names = new String[0];
+    private LatencyHistogram[] histograms = new LatencyHistogram[0];
+    private long skippedTurns = 0;
+    private int rounds = 0;
+
+    public TickProfiler(long turnBudgetNanos) {
+        this.turnBudgetNanos = turnBudgetNanos;
+    }
+
+    /**
+     * Register a span name (at startup, not in a handler)
+     * @return the id to pass to record()
+     */
+    public int addSpan(String name) {
+        int id = names.length;
+        String[] n = new String[id + 1];
+        LatencyHistogram[] h = new LatencyHistogram[id + 1];
+        System.arraycopy(names, 0, n, 0, id);
+        System.arraycopy(histograms, 0, h, 0, id);
+        n[id] = name;
+        h[id] = new LatencyHistogram();
+        names = n;
+        histograms = h;
+        return id;
+    }
+
+    /**
+     * Record a span that started at startNanos (a System.nanoTime() value) and ends now
+     */
+    public void record(int span, long startNanos) {
+        histograms[span].record(System.nanoTime() - startNanos);
+    }
+
+    public void onSkippedTurn() {
+        skippedTurns++;
+    }
+
+    public void onRoundStarted() {
+        rounds++;
+    }
+
+    public LatencyHistogram histogram(int span) {
+        return histograms[span];
+    }
+
+    public long skippedTurns() {
+        return skippedTurns;
+    }
+
+    public long turnBudgetNanos() {
+        return turnBudgetNanos;
+    }
+
+    /**
+     * Write p50/p99/max per span, how often a span alone went over the turn budget,
+     * and the skipped turn count, to a file in the robot's data directory
+     */
+    public void writeReport(File file) throws IOException {
+        PrintStream ps = new PrintStream(new RobocodeFileOutputStream(file));
+        try {
+            writeReport(ps);
+        } finally {
+            ps.close();
+        }
+    }
+
+    public void writeReport(PrintStream ps) {
+        ps.println("# Tick profile - times in microseconds, budget = " + micros(turnBudgetNanos) + " us per turn");
+        ps.println("rounds=" + rounds);
+        ps.println("skipped_turns=" + skippedTurns);
+        ps.println("span,count,mean,p50,p90,p99,max,p99_pct_of_budget,over_budget");
+        for (int i = 0; i < names.length; i++) {
+            LatencyHistogram h = histograms[i];
+            long p99 = h.percentile(99);
+            ps.println(names[i] + "," + h.count() + "," + micros((long) h.mean()) + "," + micros(h.percentile(50)) + ","
+                    + micros(h.percentile(90)) + "," + micros(p99) + "," + micros(h.max()) + ","
+                    + Math.round(100.0 * p99 / turnBudgetNanos) + "," + h.countAbove(turnBudgetNanos));
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+}
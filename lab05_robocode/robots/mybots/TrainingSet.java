@@ -0,0 +1,214 @@
+package mybots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TrainingSet
+ * A DataCollectorBot dataset prepared for MlpTrainer the way training.py prepares it:
+ *   inputs   every feature column (all but the action, tag and label columns), in file order
+ *   targets  the three action columns
+ * both normalized with their mean and population std (a std of 0 becomes 1). The last
+ * validationFraction of the rows, in file order, is held out - like Keras' validation_split.
+ *
+ * To continue training an existing model, build it with that model instead: its features pick
+ * the input columns and its stats normalize them, so the weights keep seeing the inputs they
+ * were trained on. withFeatures() picks the inputs from a feature spec instead, for trying
+ * other feature sets (HyperparameterSweep).
+ */
+public class TrainingSet {
+
+    public final String[] features;     // input column names
+    public final int inputs;
+    public final int outputs;
+    public final int rows;
+    public final int trainRows;         // rows [0, trainRows) train, the rest validate
+    public final double[] x;            // rows * inputs, normalized
+    public final double[] y;            // rows * outputs, normalized
+    public final double[] inputMean;
+    public final double[] inputStd;
+    public final double[] outputMean;
+    public final double[] outputStd;
+
+    private TrainingSet(String[] features, double[] x, double[] y, int rows, int validationRows,
+                        double[] inputMean, double[] inputStd, double[] outputMean, double[] outputStd) {
+        this.features = features;
+        this.inputs = features.length;
+        this.outputs = outputMean.length;
+        this.rows = rows;
+        this.trainRows = rows - validationRows;
+        this.x = x;
+        this.y = y;
+        this.inputMean = inputMean;
+        this.inputStd = inputStd;
+        this.outputMean = outputMean;
+        this.outputStd = outputStd;
+    }
+
+    public static TrainingSet from(Dataset data, double validationFraction) {
+        return from(data, validationFraction, null);
+    }
+
+    /**
+     * @param model the model to keep training (its features and stats are used), or null
+     */
+    public static TrainingSet from(Dataset data, double validationFraction, NeuralModel model) {
+        checkFraction(validationFraction);
+        if (model != null) {
+            String[] names = FeatureExtractor.parse(model.features).columnNames();
+            return build(data, tail(data, validationFraction), names, columns(data, names), model);
+        }
+
+        List<String> skip = new ArrayList<String>();
+        skip.addAll(Arrays.asList(DataCollectorBot.ACTION_COLUMNS));
+        skip.addAll(Arrays.asList(DataCollectorBot.TAG_COLUMNS));
+        skip.addAll(Arrays.asList(DataCollectorBot.LABEL_COLUMNS));
+        List<Integer> featureColumns = new ArrayList<Integer>();
+        for (int c = 0; c < data.columns; c++) {
+            if (!skip.contains(data.columnNames[c])) featureColumns.add(c);
+        }
+        int[] in = new int[featureColumns.size()];
+        String[] names = new String[in.length];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = featureColumns.get(i);
+            names[i] = data.columnNames[in[i]];
+        }
+        return build(data, tail(data, validationFraction), names, in, null);
+    }
+
+    /**
+     * Inputs are the columns of a FeatureExtractor spec ("legacy", "enriched" or column names), in its order
+     */
+    public static TrainingSet withFeatures(Dataset data, double validationFraction, String spec) {
+        checkFraction(validationFraction);
+        String[] names = FeatureExtractor.parse(spec).columnNames();
+        return build(data, tail(data, validationFraction), names, columns(data, names), null);
+    }
+
+    /**
+     * Hold out exactly the last validationRows rows, whatever their share of the dataset - for
+     * callers that put the rows worth validating on at the end (OnlineTrainer: the new segments)
+     * @param model the model to keep training, or null for every feature column
+     */
+    public static TrainingSet split(Dataset data, int validationRows, NeuralModel model) {
+        if (validationRows < 0 || validationRows >= data.rows) {
+            throw new IllegalArgumentException("Validation rows must be in [0, " + data.rows + "): " + validationRows);
+        }
+        if (model != null) {
+            String[] names = FeatureExtractor.parse(model.features).columnNames();
+            return build(data, validationRows, names, columns(data, names), model);
+        }
+        TrainingSet all = from(data, 0, null);
+        return new TrainingSet(all.features, all.x, all.y, all.rows, validationRows,
+                all.inputMean, all.inputStd, all.outputMean, all.outputStd);
+    }
+
+    private static int tail(Dataset data, double validationFraction) {
+        return (int) Math.round(data.rows * validationFraction);
+    }
+
+    private static void checkFraction(double validationFraction) {
+        if (validationFraction < 0 || validationFraction >= 1) {
+            throw new IllegalArgumentException("Validation fraction must be in [0, 1): " + validationFraction);
+        }
+    }
+
+    private static int[] columns(Dataset data, String[] names) {
+        int[] in = new int[names.length];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = data.columnIndex(names[i]);
+            if (in[i] < 0) throw new IllegalArgumentException("Dataset has no column " + names[i]);
+        }
+        return in;
+    }
+
+    private static TrainingSet build(Dataset data, int validationRows, String[] names, int[] in, NeuralModel model) {
+        int[] out = new int[DataCollectorBot.ACTION_COLUMNS.length];
+        for (int o = 0; o < out.length; o++) {
+            out[o] = data.columnIndex(DataCollectorBot.ACTION_COLUMNS[o]);
+            if (out[o] < 0) throw new IllegalArgumentException("Dataset has no column " + DataCollectorBot.ACTION_COLUMNS[o]);
+        }
+        if (in.length == 0 || data.rows == 0) throw new IllegalArgumentException("Dataset has no features or no rows");
+
+        double[] x = gather(data, in);
+        double[] y = gather(data, out);
+        double[] inputMean;
+        double[] inputStd;
+        double[] outputMean;
+        double[] outputStd;
+        if (model != null) {
+            if (model.outputSize() != out.length) {
+                throw new IllegalArgumentException("Model has " + model.outputSize() + " outputs, the dataset " + out.length + " actions");
+            }
+            inputMean = model.inputMean;
+            inputStd = model.inputStd;
+            outputMean = model.outputMean;
+            outputStd = model.outputStd;
+            apply(x, data.rows, inputMean, inputStd);
+            apply(y, data.rows, outputMean, outputStd);
+        } else {
+            inputMean = new double[in.length];
+            inputStd = new double[in.length];
+            outputMean = new double[out.length];
+            outputStd = new double[out.length];
+            normalize(x, data.rows, inputMean, inputStd);
+            normalize(y, data.rows, outputMean, outputStd);
+        }
+        return new TrainingSet(names, x, y, data.rows, validationRows, inputMean, inputStd, outputMean, outputStd);
+    }
+
+    private static double[] gather(Dataset data, int[] columns) {
+        int width = columns.length;
+        double[] v = new double[data.rows * width];
+        for (int r = 0; r < data.rows; r++) {
+            for (int j = 0; j < width; j++) {
+                v[r * width + j] = data.get(r, columns[j]);
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Fill mean and std (population, 0 replaced by 1) per column, then normalize v in place
+     */
+    private static void normalize(double[] v, int rows, double[] mean, double[] std) {
+        int width = mean.length;
+        for (int r = 0; r < rows; r++) {
+            for (int j = 0; j < width; j++) mean[j] += v[r * width + j];
+        }
+        for (int j = 0; j < width; j++) mean[j] /= rows;
+        for (int r = 0; r < rows; r++) {
+            for (int j = 0; j < width; j++) {
+                double d = v[r * width + j] - mean[j];
+                std[j] += d * d;
+            }
+        }
+        for (int j = 0; j < width; j++) {
+            std[j] = Math.sqrt(std[j] / rows);
+            // Avoid division by zero if a value never changes
+            if (std[j] == 0) std[j] = 1;
+        }
+        apply(v, rows, mean, std);
+    }
+
+    private static void apply(double[] v, int rows, double[] mean, double[] std) {
+        int width = mean.length;
+        for (int r = 0; r < rows; r++) {
+            for (int j = 0; j < width; j++) {
+                v[r * width + j] = (v[r * width + j] - mean[j]) / std[j];
+            }
+        }
+    }
+
+    /**
+     * The features spec NeuralNetBot parses (FeatureExtractor column names)
+     */
+    public String featureSpec() {
+        return String.join(",", features);
+    }
+
+    public int validationRows() {
+        return rows - trainRows;
+    }
+}
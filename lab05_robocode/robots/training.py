@@ -1,3 +1,4 @@
+import gzip
 import pandas as pd
 import numpy as np
 import tensorflow as tf
@@ -5,20 +6,70 @@ from tensorflow import keras
 from tensorflow.keras import layers
 
 # CONFIG GLOBALS
-INPUT_COLS = 7  # Distance, Bearing, E_Vel, My_Energy, E_Energy, Wall_Dist, Wall_Bearing
-OUTPUT_COLS = 3 # Turn, Move, Fire
-HIDDEN_NODES = 20
+# The input columns are whatever features DataCollectorBot logged (7 by default:
+# Distance, Bearing, E_Vel, My_Energy, E_Energy, Wall_Dist, Wall_Bearing)
+OUTPUT_COLS = 3 # Turn, Move, Fire - the 3 columns after the features
+TAG_COLS = ['opponent_id', 'others'] # Which opponent a row is about / robots left - for melee analysis
+LABEL_COLS = ['bullet_hit', 'bullet_damage'] # Shot outcome labels, not used for imitation training
+# Hidden layers as (width, activation) - any depth; NeuralNetBot reads the architecture from
+# neural_weights.txt. Activations: 'relu', 'tanh', 'linear' or 'leaky_relu' (slope 0.2, Keras default)
+HIDDEN_LAYERS = [(20, 'relu'), (20, 'relu')]
+OUTPUT_ACTIVATION = 'linear'
 
 # LOAD DATA
-# training_data.csv has to be in the same directory as this file
+# DataCollectorBot writes one segment per round plus training_data.manifest listing them.
+# The manifest and segments (or an old single training_data.csv) have to be in the same directory as this file
+def read_binary_dataset(path):
+    # Layout matches BinarySampleSink.java: 16 byte fixed header, column names, then records
+    raw = open(path, 'rb').read()
+    if raw[:2] == b'\x1f\x8b':
+        raw = gzip.decompress(raw)
+    magic, version, value_size, _, columns, data_offset = np.frombuffer(raw[:16], dtype=np.dtype('<u4,<u2,u1,u1,<i4,<i4'))[0]
+    if magic != 0x53444352:
+        raise ValueError(path + " is not a DataCollectorBot dataset")
+    names = []
+    pos = 16
+    for _ in range(columns):
+        length = int.from_bytes(raw[pos:pos + 2], 'little')
+        names.append(raw[pos + 2:pos + 2 + length].decode('utf-8'))
+        pos += 2 + length
+    values = np.frombuffer(raw[data_offset:], dtype='<f4' if value_size == 4 else '<f8')
+    values = values[:len(values) - len(values) % columns]
+    return pd.DataFrame(values.reshape(-1, columns).astype(np.float64), columns=names)
+
+def read_manifest(path):
+    entries = {}
+    with open(path) as f:
+        for line in f:
+            if '=' in line and not line.startswith('#'):
+                key, value = line.strip().split('=', 1)
+                entries[key] = value
+    return entries
+
+def read_dataset():
+    try:
+        manifest = read_manifest('training_data.manifest')
+    except FileNotFoundError:
+        return pd.read_csv('training_data.csv')
+    frames = []
+    for i in range(int(manifest['dataset.segments'])):
+        name = manifest[f'segment.{i}.file']
+        frames.append(read_binary_dataset(name) if '.bin' in name else pd.read_csv(name))
+    return pd.concat(frames, ignore_index=True)
+
 try:
-    data = pd.read_csv('training_data.csv')
+    data = read_dataset()
 except FileNotFoundError:
-    print("Error: training_data.csv not found")
+    print("Error: training_data.manifest or training_data.csv not found")
     exit()
 
 print(f"Loaded {len(data)} rows of battle data.")
 
+data = data.drop(columns=[c for c in TAG_COLS + LABEL_COLS if c in data.columns])
+INPUT_COLS = len(data.columns) - OUTPUT_COLS
+FEATURES = list(data.columns[:INPUT_COLS])
+print(f"Input features: {FEATURES}")
+
 # Split into Inputs (X) and Targets (y)
 X = data.iloc[:, 0 : INPUT_COLS].values
 y = data.iloc[:, INPUT_COLS : INPUT_COLS + OUTPUT_COLS].values
@@ -43,12 +94,11 @@ std_y[std_y == 0] = 1.0
 y_normalized = (y - mean_y) / std_y
 
 # BUILD MODEL
-model = keras.Sequential([
-    layers.Input(shape=(INPUT_COLS,)),
-    layers.Dense(HIDDEN_NODES, activation='relu'),  # Hidden Layer 1
-    layers.Dense(HIDDEN_NODES, activation='relu'),  # Hidden Layer 2
-    layers.Dense(OUTPUT_COLS, activation='linear')  # Output Layer (for regression)
-])
+model = keras.Sequential(
+    [layers.Input(shape=(INPUT_COLS,))]
+    + [layers.Dense(width, activation=act) for width, act in HIDDEN_LAYERS]  # Hidden Layers
+    + [layers.Dense(OUTPUT_COLS, activation=OUTPUT_ACTIVATION)]  # Output Layer (for regression)
+)
 
 model.compile(optimizer='adam', loss='mse', metrics=['mae'])
 
@@ -62,12 +112,13 @@ model.fit(X_normalized, y_normalized, epochs=100, batch_size=32, validation_spli
 # Line 2: Input Stds (comma separated)
 # Line 3: Output Means (comma separated)
 # Line 4: Output Stds (comma separated)
-# Line 5: Layer 1 Weights (flattened)
-# Line 6: Layer 1 Biases
-# Line 7: Layer 2 Weights
-# Line 8: Layer 2 Biases
-# Line 9: Output Layer Weight
-# Line 10: Output Layer Bias
+# Then two lines per layer, hidden layers first:
+#   Layer Weights (flattened)
+#   Layer Biases
+# Then:
+# features=<comma separated input column names> (FeatureExtractor names)
+# activations=<one per layer>
+# sizes=<layer widths, inputs first>
 
 with open('neural_weights.txt', 'w') as f:
     # Header: Input Normalization Constants
@@ -90,4 +141,9 @@ with open('neural_weights.txt', 'w') as f:
         b_flat = biases.flatten()
         f.write(",".join(map(str, b_flat)) + "\n")
 
+    # Footer: which features (and in which order) the inputs are, and the architecture
+    f.write("features=" + ",".join(FEATURES) + "\n")
+    f.write("activations=" + ",".join([act for _, act in HIDDEN_LAYERS] + [OUTPUT_ACTIVATION]) + "\n")
+    f.write("sizes=" + ",".join(str(n) for n in [INPUT_COLS] + [w for w, _ in HIDDEN_LAYERS] + [OUTPUT_COLS]) + "\n")
+
 print("Done - now move neural_weights.txt to the neural net's data directory")
\ No newline at end of file